@@ -41,12 +41,18 @@ public class Configuration {
     public static final String PREF_MAP_HILLSHADES = "map_hillshades";
     public static final String PREF_HILLSHADES_TRANSPARENCY = "hillshades_transparency";
     private static final String PREF_MAP_GRID = "map_grid";
+    private static final String PREF_TILE_ARCHIVES = "tile_archives";
+    private static final String PREF_MAP_LOADER_THREADS = "map_loader_threads";
+    private static final String PREF_TILE_CACHE_SIZE = "tile_cache_size";
+    private static final String PREF_ONLINE_CACHE_SIZE = "online_cache_size";
     private static final String PREF_BITMAP_MAP = "bitmap_map";
     private static final String PREF_POINTS_COUNTER = "wpt_counter";
     private static final String PREF_UID = "uid";
     private static final String PREF_LOCATION_STATE = "location_state";
     private static final String PREF_PREVIOUS_LOCATION_STATE = "previous_location_state";
     private static final String PREF_TRACKING_STATE = "tracking_state";
+    private static final String PREF_TRACK_SIMPLIFICATION = "track_simplification";
+    private static final String PREF_TRACK_KEEP_RAW = "track_keep_raw";
     private static final String PREF_ACTION_PANEL_STATE = "action_panel_state";
     private static final String PREF_NAVIGATION_WAYPOINT = "navigation_waypoint";
     private static final String PREF_NAVIGATION_LATITUDE = "navigation_waypoint_latitude";
@@ -137,6 +143,29 @@ public class Configuration {
         saveInt(PREF_TRACKING_STATE, trackingState);
     }
 
+    /**
+     * Maximum deviation of simplified recorded track from actual path in meters, 0 disables
+     * simplification.
+     */
+    public static int getTrackSimplification() {
+        return Integer.parseInt(loadString(PREF_TRACK_SIMPLIFICATION, "0"));
+    }
+
+    public static void setTrackSimplification(int tolerance) {
+        saveString(PREF_TRACK_SIMPLIFICATION, String.valueOf(tolerance));
+    }
+
+    /**
+     * Whether all recorded points should be kept along with simplified track.
+     */
+    public static boolean getTrackKeepRaw() {
+        return loadBoolean(PREF_TRACK_KEEP_RAW, false);
+    }
+
+    public static void setTrackKeepRaw(boolean keep) {
+        saveBoolean(PREF_TRACK_KEEP_RAW, keep);
+    }
+
     public static boolean getActionPanelState() {
         return loadBoolean(PREF_ACTION_PANEL_STATE, true);
     }
@@ -232,6 +261,50 @@ public class Configuration {
         return loadInt(PREF_HILLSHADES_TRANSPARENCY, 50);
     }
 
+    /**
+     * Store tiles of imported native maps in memory mapped archives instead of maps database.
+     */
+    public static boolean getTileArchivesEnabled() {
+        return loadBoolean(PREF_TILE_ARCHIVES, false);
+    }
+
+    public static void setTileArchivesEnabled(boolean tileArchivesEnabled) {
+        saveBoolean(PREF_TILE_ARCHIVES, tileArchivesEnabled);
+    }
+
+    /**
+     * Number of native map tile loader threads, zero means number of processor cores.
+     */
+    public static int getMapLoaderThreads() {
+        return loadInt(PREF_MAP_LOADER_THREADS, 0);
+    }
+
+    public static void setMapLoaderThreads(int threads) {
+        saveInt(PREF_MAP_LOADER_THREADS, threads);
+    }
+
+    /**
+     * Memory budget of decoded native tile cache (including prefetched tiles) in megabytes.
+     */
+    public static int getTileCacheSize() {
+        return loadInt(PREF_TILE_CACHE_SIZE, 16);
+    }
+
+    public static void setTileCacheSize(int size) {
+        saveInt(PREF_TILE_CACHE_SIZE, size);
+    }
+
+    /**
+     * Size budget of online map tile cache shared by all online maps in megabytes.
+     */
+    public static int getOnlineCacheSize() {
+        return loadInt(PREF_ONLINE_CACHE_SIZE, 256);
+    }
+
+    public static void setOnlineCacheSize(int size) {
+        saveInt(PREF_ONLINE_CACHE_SIZE, size);
+    }
+
     public static boolean getGridLayerEnabled() {
         return loadBoolean(PREF_MAP_GRID, false);
     }
@@ -204,8 +204,10 @@ import mobi.maptrek.maps.MapService;
 import mobi.maptrek.maps.Themes;
 import mobi.maptrek.maps.maptrek.Index;
 import mobi.maptrek.maps.maptrek.LabelTileLoaderHook;
+import mobi.maptrek.maps.maptrek.MapTrekTileLayer;
 import mobi.maptrek.maps.maptrek.MapTrekTileSource;
 import mobi.maptrek.maps.maptrek.Tags;
+import mobi.maptrek.maps.maptrek.TilePrefetcher;
 import mobi.maptrek.util.FileUtils;
 import mobi.maptrek.util.HelperUtils;
 import mobi.maptrek.util.MarkerFactory;
@@ -375,6 +377,7 @@ public class MainActivity extends BasePluginActivity implements ILocationListene
     private MapIndex mMapIndex;
     private Index mNativeMapIndex;
     private MapTrekTileSource mNativeTileSource;
+    private TilePrefetcher mTilePrefetcher;
     private MapFile mBitmapLayerMap;
     private WaypointDbDataSource mWaypointDbDataSource;
     private List<FileDataSource> mData = new ArrayList<>();
@@ -636,11 +639,12 @@ public class MainActivity extends BasePluginActivity implements ILocationListene
         mNativeTileSource = new MapTrekTileSource(application.getDetailedMapDatabase());
         mNativeTileSource.setContoursEnabled(Configuration.getContoursEnabled());
 
-        mBaseLayer = new OsmTileLayer(mMap);
+        mBaseLayer = new MapTrekTileLayer(mMap);
         mBaseLayer.setTileSource(mNativeTileSource);
 
         mMap.setBaseMap(mBaseLayer); // will go to base group
         mNativeTileSource.setOnDataMissingListener(this);
+        mTilePrefetcher = new TilePrefetcher(mNativeTileSource, mBackgroundHandler);
 
         // setBaseMap does not operate with layer groups so we add remaining groups later
         layers.addGroup(MAP_MAPS);
@@ -1559,6 +1563,15 @@ public class MainActivity extends BasePluginActivity implements ILocationListene
                 //FIXME VTM
                 mMap.animator().animateTo(mMovementAnimationDuration, mMapPosition, rotate);
             }
+
+            // Load tiles ahead of movement, when navigating look towards destination
+            float direction = mAveragedBearing;
+            double distance = Double.MAX_VALUE;
+            if (mNavigationService != null && mNavigationService.isNavigating()) {
+                direction = mNavigationService.getBearing();
+                distance = mNavigationService.getDistance();
+            }
+            mTilePrefetcher.prefetch(lat, lon, location.getSpeed(), direction, distance, mMapPosition.getZoomLevel());
         }
 
         mLocationOverlay.setPosition(lat, lon, bearing);
@@ -1657,7 +1670,7 @@ public class MainActivity extends BasePluginActivity implements ILocationListene
         }
         if (mTrackingState == TRACKING_STATE.TRACKING) {
             Track currentTrack = mCurrentTrackLayer.getTrack();
-            if (currentTrack.points.size() == 0)
+            if (currentTrack.size() == 0)
                 disableTracking();
             else
                 onTrackDetails(currentTrack, true);
@@ -1875,6 +1888,7 @@ public class MainActivity extends BasePluginActivity implements ILocationListene
             mLocationService.unregisterLocationCallback(this);
             mLocationService.setProgressListener(null);
         }
+        mTilePrefetcher.cancel();
         if (mIsLocationBound) {
             unbindService(mLocationConnection);
             mIsLocationBound = false;
@@ -3720,6 +3734,8 @@ public class MainActivity extends BasePluginActivity implements ILocationListene
             String action = intent.getAction();
             logger.debug("Broadcast: {}", action);
             if (MapService.BROADCAST_MAP_ADDED.equals(action) || MapService.BROADCAST_MAP_REMOVED.equals(action)) {
+                mNativeTileSource.clearCache();
+                mLabelTileLoaderHook.clearCache();
                 mMap.clearMap();
             }
             if (BaseLocationService.BROADCAST_TRACK_SAVE.equals(action)) {
@@ -50,12 +50,14 @@ import mobi.maptrek.data.source.WaypointDbDataSource;
 import mobi.maptrek.maps.maptrek.HillshadeDatabaseHelper;
 import mobi.maptrek.maps.maptrek.Index;
 import mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper;
+import mobi.maptrek.maps.online.OnlineTileCache;
 import mobi.maptrek.util.LongSparseArrayIterator;
 import mobi.maptrek.util.StringFormatter;
 
 public class MapTrek extends Application {
     private static final Logger logger = LoggerFactory.getLogger(MapTrek.class);
     public static final String EXCEPTION_PATH = "exception.txt";
+    private static final long HILLSHADE_CACHE_SIZE = 16 * 1024 * 1024;
 
     private static MapTrek mSelf;
     private File mExceptionLog;
@@ -72,6 +74,7 @@ public class MapTrek extends Application {
     private HillshadeDatabaseHelper mHillshadeHelper;
     private SQLiteDatabase mHillshadeDatabase;
     private WaypointDbDataSource mWaypointDbDataSource;
+    private OnlineTileCache mOnlineTileCache;
     private String mUserNotification;
 
     private static final LongSparseArray<MapObject> mapObjects = new LongSparseArray<>();
@@ -188,10 +191,23 @@ public class MapTrek extends Application {
     SQLiteTileSource getHillShadeTileSource() {
         SQLiteTileSource tileSource = new SQLiteTileSource(getHillshadeDatabaseHelper(false));
         TileSource.OpenResult result = tileSource.open();
-        if (result.isSuccess())
-            return tileSource;
-        else
+        if (!result.isSuccess())
             return null;
+        tileSource.setBitmapCacheSize(HILLSHADE_CACHE_SIZE);
+        return tileSource;
+    }
+
+    /**
+     * Returns tile cache shared by online maps or null if cache directory is not available.
+     */
+    public synchronized @Nullable
+    OnlineTileCache getOnlineTileCache() {
+        if (mOnlineTileCache == null) {
+            File cacheDir = new File(getExternalCacheDir(), "online");
+            if (cacheDir.mkdir() || cacheDir.isDirectory())
+                mOnlineTileCache = new OnlineTileCache(this, cacheDir, Configuration.getOnlineCacheSize() * 1024L * 1024L);
+        }
+        return mOnlineTileCache;
     }
 
     public Index getMapIndex() {
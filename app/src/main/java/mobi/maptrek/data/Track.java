@@ -19,13 +19,29 @@ package mobi.maptrek.data;
 import org.oscim.core.BoundingBox;
 import org.oscim.core.GeoPoint;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 import mobi.maptrek.data.source.DataSource;
 import mobi.maptrek.data.style.TrackStyle;
+import mobi.maptrek.util.Geo;
 
+/**
+ * Track points are stored in growable chunks of primitive columns. Use indexed accessors to
+ * iterate points without creating objects. Code that iterates track that can be modified
+ * concurrently should synchronize on track.
+ */
 public class Track {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // elevation changes below this threshold are treated as noise
+    private static final float ELEVATION_THRESHOLD = 5f; // meters
+    // slower movement is treated as standing still
+    private static final float MOVING_SPEED = 0.5f; // m/s
+
     public int id;
     public String name;
     public String description;
@@ -33,21 +49,54 @@ public class Track {
     public TrackStyle style = new TrackStyle();
     public DataSource source; // back reference to it's source
 
-    public final List<TrackPoint> points = new ArrayList<>();
-    private TrackPoint mLastTrackPoint;
-    private float mDistance = Float.NaN;
-    private BoundingBox mBox = null;
+    /**
+     * Read only view of track points, every access creates new point object.
+     */
+    public final List<TrackPoint> points = new AbstractList<TrackPoint>() {
+        @Override
+        public TrackPoint get(int index) {
+            return getPoint(index);
+        }
 
-    public BoundingBox getBoundingBox() {
-        //TODO Honor empty track
-        if (mBox == null) {
-            mBox = new BoundingBox();
-            synchronized (points) {
-                for (TrackPoint point : points)
-                    mBox.extend(point.latitudeE6, point.longitudeE6);
-            }
+        @Override
+        public int size() {
+            return mSize;
         }
-        return mBox;
+    };
+
+    private int[][] mLatitudes = new int[1][];
+    private int[][] mLongitudes = new int[1][];
+    private float[][] mElevations = new float[1][];
+    private float[][] mSpeeds = new float[1][];
+    private float[][] mBearings = new float[1][];
+    private float[][] mAccuracies = new float[1][];
+    private long[][] mTimes = new long[1][];
+    // set bits mark points that start new segment
+    private final BitSet mBreaks = new BitSet();
+    private int mChunks = 0;
+    private int mSize = 0;
+
+    // statistics are updated with each added point, points added by addPointFast invalidate them
+    private boolean mStatisticsValid = true;
+    private float mDistance = 0f;
+    private BoundingBox mBox = new BoundingBox();
+    private float mElevationGain = 0f;
+    private float mElevationLoss = 0f;
+    private float mElevationReference = Float.NaN;
+    private long mMovingTime = 0L;
+
+    /**
+     * Returns a copy of track bounding box, it can be freely modified by caller.
+     */
+    public synchronized BoundingBox getBoundingBox() {
+        //TODO Honor empty track
+        if (!mStatisticsValid)
+            rebuildStatistics();
+        return copyBoundingBox(mBox);
+    }
+
+    private static BoundingBox copyBoundingBox(BoundingBox box) {
+        return new BoundingBox(box.minLatitudeE6, box.minLongitudeE6, box.maxLatitudeE6, box.maxLongitudeE6);
     }
 
     public class TrackPoint extends GeoPoint {
@@ -80,62 +129,270 @@ public class Track {
     }
 
     public synchronized void copyFrom(Track track) {
-        points.clear();
-        points.addAll(track.points);
-        mLastTrackPoint = track.getLastPoint();
-        name = track.name;
-        description = track.description;
-        track.style.copy(style);
-        mDistance = track.mDistance;
-    }
-
-    public void addPoint(boolean continuous, int latE6, int lonE6, float elev, float speed, float bearing, float accuracy, long time) {
-        TrackPoint previous = mLastTrackPoint;
-        if (mLastTrackPoint == null)
-            mDistance = 0f;
-        mLastTrackPoint = new TrackPoint(continuous, latE6, lonE6, elev, speed, bearing, accuracy, time);
-        if (previous != null)
-            mDistance += previous.vincentyDistance(mLastTrackPoint);
-        synchronized (points) {
-            points.add(mLastTrackPoint);
+        synchronized (track) {
+            mLatitudes = copyChunks(track.mLatitudes, track.mChunks);
+            mLongitudes = copyChunks(track.mLongitudes, track.mChunks);
+            mElevations = copyChunks(track.mElevations, track.mChunks);
+            mSpeeds = copyChunks(track.mSpeeds, track.mChunks);
+            mBearings = copyChunks(track.mBearings, track.mChunks);
+            mAccuracies = copyChunks(track.mAccuracies, track.mChunks);
+            mTimes = copyChunks(track.mTimes, track.mChunks);
+            mBreaks.clear();
+            mBreaks.or(track.mBreaks);
+            mChunks = track.mChunks;
+            mSize = track.mSize;
+            name = track.name;
+            description = track.description;
+            track.style.copy(style);
+            mStatisticsValid = track.mStatisticsValid;
+            mDistance = track.mDistance;
+            mBox = copyBoundingBox(track.mBox);
+            mElevationGain = track.mElevationGain;
+            mElevationLoss = track.mElevationLoss;
+            mElevationReference = track.mElevationReference;
+            mMovingTime = track.mMovingTime;
         }
     }
 
     /**
-     * Adds point without calculating distance, suitable for loading track from file. Should not be
-     * mixed with addPoint.
+     * Adds point and updates track statistics.
      */
-    public void addPointFast(boolean continuous, int latE6, int lonE6, float elev, float speed, float bearing, float accuracy, long time) {
-        mLastTrackPoint = new TrackPoint(continuous, latE6, lonE6, elev, speed, bearing, accuracy, time);
-        synchronized (points) {
-            points.add(mLastTrackPoint);
+    public synchronized void addPoint(boolean continuous, int latE6, int lonE6, float elev, float speed, float bearing, float accuracy, long time) {
+        append(continuous, latE6, lonE6, elev, speed, bearing, accuracy, time);
+        if (mStatisticsValid)
+            updateStatistics(mSize - 1);
+    }
+
+    /**
+     * Adds point without calculating statistics, suitable for loading track from file. Statistics
+     * are calculated in one pass when they are first requested.
+     */
+    public synchronized void addPointFast(boolean continuous, int latE6, int lonE6, float elev, float speed, float bearing, float accuracy, long time) {
+        append(continuous, latE6, lonE6, elev, speed, bearing, accuracy, time);
+        mStatisticsValid = false;
+    }
+
+    private void append(boolean continuous, int latE6, int lonE6, float elev, float speed, float bearing, float accuracy, long time) {
+        int chunk = mSize >> CHUNK_SHIFT;
+        int pos = mSize & CHUNK_MASK;
+        if (chunk == mChunks)
+            addChunk();
+        mLatitudes[chunk][pos] = latE6;
+        mLongitudes[chunk][pos] = lonE6;
+        mElevations[chunk][pos] = elev;
+        mSpeeds[chunk][pos] = speed;
+        mBearings[chunk][pos] = bearing;
+        mAccuracies[chunk][pos] = accuracy;
+        mTimes[chunk][pos] = time;
+        if (!continuous)
+            mBreaks.set(mSize);
+        mSize++;
+    }
+
+    private void addChunk() {
+        if (mChunks == mLatitudes.length) {
+            int length = mChunks << 1;
+            mLatitudes = Arrays.copyOf(mLatitudes, length);
+            mLongitudes = Arrays.copyOf(mLongitudes, length);
+            mElevations = Arrays.copyOf(mElevations, length);
+            mSpeeds = Arrays.copyOf(mSpeeds, length);
+            mBearings = Arrays.copyOf(mBearings, length);
+            mAccuracies = Arrays.copyOf(mAccuracies, length);
+            mTimes = Arrays.copyOf(mTimes, length);
         }
+        mLatitudes[mChunks] = new int[CHUNK_SIZE];
+        mLongitudes[mChunks] = new int[CHUNK_SIZE];
+        mElevations[mChunks] = new float[CHUNK_SIZE];
+        mSpeeds[mChunks] = new float[CHUNK_SIZE];
+        mBearings[mChunks] = new float[CHUNK_SIZE];
+        mAccuracies[mChunks] = new float[CHUNK_SIZE];
+        mTimes[mChunks] = new long[CHUNK_SIZE];
+        mChunks++;
+    }
+
+    private static int[][] copyChunks(int[][] chunks, int count) {
+        int[][] copy = new int[Math.max(count, 1)][];
+        for (int i = 0; i < count; i++)
+            copy[i] = chunks[i].clone();
+        return copy;
+    }
+
+    private static float[][] copyChunks(float[][] chunks, int count) {
+        float[][] copy = new float[Math.max(count, 1)][];
+        for (int i = 0; i < count; i++)
+            copy[i] = chunks[i].clone();
+        return copy;
+    }
+
+    private static long[][] copyChunks(long[][] chunks, int count) {
+        long[][] copy = new long[Math.max(count, 1)][];
+        for (int i = 0; i < count; i++)
+            copy[i] = chunks[i].clone();
+        return copy;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isContinuous(int index) {
+        return !mBreaks.get(index);
+    }
+
+    public int getLatitudeE6(int index) {
+        return mLatitudes[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public int getLongitudeE6(int index) {
+        return mLongitudes[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public float getElevation(int index) {
+        return mElevations[index >> CHUNK_SHIFT][index & CHUNK_MASK];
     }
 
-    public float getDistance() {
-        if (Float.isNaN(mDistance)) {
-            mDistance = 0f;
-            synchronized (points) {
-                TrackPoint previous = mLastTrackPoint;
-                if (points.size() > 1) {
-                    for (int i = points.size() - 2; i >= 0; i--) {
-                        TrackPoint current = points.get(i);
-                        mDistance += previous.vincentyDistance(current);
-                        previous = current;
-                    }
+    public float getSpeed(int index) {
+        return mSpeeds[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public float getBearing(int index) {
+        return mBearings[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public float getAccuracy(int index) {
+        return mAccuracies[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public long getTime(int index) {
+        return mTimes[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * Creates point object for specified index.
+     */
+    public TrackPoint getPoint(int index) {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        int chunk = index >> CHUNK_SHIFT;
+        int pos = index & CHUNK_MASK;
+        return new TrackPoint(!mBreaks.get(index), mLatitudes[chunk][pos], mLongitudes[chunk][pos],
+                mElevations[chunk][pos], mSpeeds[chunk][pos], mBearings[chunk][pos],
+                mAccuracies[chunk][pos], mTimes[chunk][pos]);
+    }
+
+    public synchronized float getDistance() {
+        if (!mStatisticsValid)
+            rebuildStatistics();
+        return mDistance;
+    }
+
+    /**
+     * Returns total ascent in meters, small fluctuations are ignored.
+     */
+    public synchronized float getElevationGain() {
+        if (!mStatisticsValid)
+            rebuildStatistics();
+        return mElevationGain;
+    }
+
+    /**
+     * Returns total descent in meters, small fluctuations are ignored.
+     */
+    public synchronized float getElevationLoss() {
+        if (!mStatisticsValid)
+            rebuildStatistics();
+        return mElevationLoss;
+    }
+
+    /**
+     * Returns time in milliseconds spent moving, breaks between segments are not counted.
+     */
+    public synchronized long getMovingTime() {
+        if (!mStatisticsValid)
+            rebuildStatistics();
+        return mMovingTime;
+    }
+
+    /**
+     * Recalculates track statistics from scratch. Should be called after track points are
+     * modified by other means than adding points.
+     */
+    public synchronized void rebuildStatistics() {
+        resetStatistics();
+        for (int i = 0; i < mSize; i++)
+            updateStatistics(i);
+        mStatisticsValid = true;
+    }
+
+    private void resetStatistics() {
+        mDistance = 0f;
+        mBox = new BoundingBox();
+        mElevationGain = 0f;
+        mElevationLoss = 0f;
+        mElevationReference = Float.NaN;
+        mMovingTime = 0L;
+    }
+
+    private void updateStatistics(int index) {
+        int latE6 = getLatitudeE6(index);
+        int lonE6 = getLongitudeE6(index);
+        mBox.extend(latE6, lonE6);
+
+        float elevation = getElevation(index);
+        if (!Float.isNaN(elevation)) {
+            if (Float.isNaN(mElevationReference)) {
+                mElevationReference = elevation;
+            } else {
+                float delta = elevation - mElevationReference;
+                if (delta >= ELEVATION_THRESHOLD) {
+                    mElevationGain += delta;
+                    mElevationReference = elevation;
+                } else if (delta <= -ELEVATION_THRESHOLD) {
+                    mElevationLoss -= delta;
+                    mElevationReference = elevation;
                 }
             }
         }
-        return mDistance;
+
+        if (index == 0)
+            return;
+
+        int previous = index - 1;
+        double distance = Geo.distance(getLatitudeE6(previous) / 1E6, getLongitudeE6(previous) / 1E6, latE6 / 1E6, lonE6 / 1E6);
+        if (distance > 0)
+            mDistance += distance;
+        else
+            distance = 0;
+
+        long time = getTime(index);
+        long previousTime = getTime(previous);
+        if (isContinuous(index) && previousTime > 0L && time > previousTime) {
+            long period = time - previousTime;
+            float speed = getSpeed(index);
+            if (Float.isNaN(speed))
+                speed = (float) (distance * 1000 / period);
+            if (speed >= MOVING_SPEED)
+                mMovingTime += period;
+        }
     }
 
     public synchronized void clear() {
-        points.clear();
-        mLastTrackPoint = null;
-        mDistance = Float.NaN;
+        mLatitudes = new int[1][];
+        mLongitudes = new int[1][];
+        mElevations = new float[1][];
+        mSpeeds = new float[1][];
+        mBearings = new float[1][];
+        mAccuracies = new float[1][];
+        mTimes = new long[1][];
+        mBreaks.clear();
+        mChunks = 0;
+        mSize = 0;
+        resetStatistics();
+        mStatisticsValid = true;
     }
 
     public TrackPoint getLastPoint() {
-        return mLastTrackPoint;
+        int size = mSize;
+        return size > 0 ? getPoint(size - 1) : null;
     }
 }
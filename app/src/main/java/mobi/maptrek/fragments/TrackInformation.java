@@ -64,6 +64,7 @@ import mobi.maptrek.data.style.MarkerStyle;
 import mobi.maptrek.location.ILocationService;
 import mobi.maptrek.location.ITrackingListener;
 import mobi.maptrek.location.LocationService;
+import mobi.maptrek.util.Geo;
 import mobi.maptrek.util.HelperUtils;
 import mobi.maptrek.util.MeanValue;
 import mobi.maptrek.util.StringFormatter;
@@ -74,7 +75,7 @@ public class TrackInformation extends Fragment implements PopupMenu.OnMenuItemCl
 
     int mSegmentCount = 0;
     float mMinElevation = Float.MAX_VALUE;
-    float mMaxElevation = Float.MIN_VALUE;
+    float mMaxElevation = -Float.MAX_VALUE;
     float mMaxSpeed = 0;
     private MeanValue mSpeedMeanValue;
 
@@ -265,7 +266,7 @@ public class TrackInformation extends Fragment implements PopupMenu.OnMenuItemCl
             sourceRow.setVisibility(View.VISIBLE);
         }
 
-        Track.TrackPoint ftp = mTrack.points.get(0);
+        Track.TrackPoint ftp = mTrack.getPoint(0);
         Track.TrackPoint ltp = mTrack.getLastPoint();
         boolean hasTime = ftp.time > 0 && ltp.time > 0;
 
@@ -297,40 +298,40 @@ public class TrackInformation extends Fragment implements PopupMenu.OnMenuItemCl
         ArrayList<Entry> speedValues = new ArrayList<>();
         ArrayList<String> xValues = new ArrayList<>();
 
-        Track.TrackPoint ptp = null;
         long startTime = ftp.time;
-        int i = 0;
+        int size = mTrack.size();
         mSegmentCount = 1;
-        for (Track.TrackPoint point : mTrack.points) {
-            if (!point.continuous)
+        for (int i = 0; i < size; i++) {
+            if (!mTrack.isContinuous(i))
                 mSegmentCount++;
 
-            int offset = (int) (point.time - startTime) / 1000;
+            long time = mTrack.getTime(i);
+            int offset = (int) (time - startTime) / 1000;
             xValues.add("+" + DateUtils.formatElapsedTime(offset));
 
-            if (!Float.isNaN(point.elevation)) {
-                elevationValues.add(new Entry(point.elevation, i));
+            float elevation = mTrack.getElevation(i);
+            if (!Float.isNaN(elevation)) {
+                elevationValues.add(new Entry(elevation, i));
 
-                if (point.elevation < mMinElevation && point.elevation != 0)
-                    mMinElevation = point.elevation;
-                if (point.elevation > mMaxElevation)
-                    mMaxElevation = point.elevation;
+                if (elevation < mMinElevation)
+                    mMinElevation = elevation;
+                if (elevation > mMaxElevation)
+                    mMaxElevation = elevation;
 
-                if (point.elevation != 0)
-                    hasElevation = true;
+                hasElevation = true;
             }
 
-            float speed = Float.NaN;
-            if (Float.isNaN(point.speed)) {
+            float speed = mTrack.getSpeed(i);
+            if (Float.isNaN(speed)) {
                 if (hasTime) {
-                    if (ptp != null) {
-                        speed = ((float) point.vincentyDistance(ptp)) / ((point.time - ptp.time) / 1000);
+                    if (i > 0) {
+                        double distance = Geo.distance(mTrack.getLatitudeE6(i - 1) / 1E6, mTrack.getLongitudeE6(i - 1) / 1E6,
+                                mTrack.getLatitudeE6(i) / 1E6, mTrack.getLongitudeE6(i) / 1E6);
+                        speed = ((float) distance) / ((time - mTrack.getTime(i - 1)) / 1000);
                     } else {
                         speed = 0f;
                     }
                 }
-            } else {
-                speed = point.speed;
             }
             if (!Float.isNaN(speed) && !Float.isInfinite(speed)) {
                 speedValues.add(new Entry(speed * StringFormatter.speedFactor, i));
@@ -339,9 +340,6 @@ public class TrackInformation extends Fragment implements PopupMenu.OnMenuItemCl
                     mMaxSpeed = speed;
                 hasSpeed = true;
             }
-
-            ptp = point;
-            i++;
         }
 
         View statisticsHeader = rootView.findViewById(R.id.statisticsHeader);
@@ -429,10 +427,10 @@ public class TrackInformation extends Fragment implements PopupMenu.OnMenuItemCl
     }
 
     private void updateTrackInformation(Activity activity, Resources resources) {
-        Track.TrackPoint ftp = mTrack.points.get(0);
+        Track.TrackPoint ftp = mTrack.getPoint(0);
         Track.TrackPoint ltp = mTrack.getLastPoint();
 
-        int pointCount = mTrack.points.size();
+        int pointCount = mTrack.size();
         mPointCountView.setText(resources.getQuantityString(R.plurals.numberOfPoints, pointCount, pointCount));
 
         String distance = StringFormatter.distanceHP(mTrack.getDistance());
@@ -451,13 +449,17 @@ public class TrackInformation extends Fragment implements PopupMenu.OnMenuItemCl
         } else {
             timeSpan = DateUtils.formatDateRange(activity, ftp.time, ltp.time, DateUtils.FORMAT_ABBREV_MONTH);
         }
+        long movingTime = mTrack.getMovingTime() / 1000;
+        if (movingTime > 0L)
+            timeSpan = String.format(Locale.getDefault(), "%s (%s: %s)", timeSpan, resources.getString(R.string.moving_time), DateUtils.formatElapsedTime(movingTime));
         mTimeSpanView.setText(timeSpan);
     }
 
     private void updateTrackStatistics(Resources resources) {
         mSegmentCountView.setText(resources.getQuantityString(R.plurals.numberOfSegments, mSegmentCount, mSegmentCount));
-        mMaxElevationView.setText(StringFormatter.elevationH(mMaxElevation));
-        mMinElevationView.setText(StringFormatter.elevationH(mMinElevation));
+        // elevation gain and loss are maintained by track itself
+        mMaxElevationView.setText(String.format(Locale.getDefault(), "%s (%s: %s)", StringFormatter.elevationH(mMaxElevation), resources.getString(R.string.elevation_gain), StringFormatter.elevationH(mTrack.getElevationGain())));
+        mMinElevationView.setText(String.format(Locale.getDefault(), "%s (%s: %s)", StringFormatter.elevationH(mMinElevation), resources.getString(R.string.elevation_loss), StringFormatter.elevationH(mTrack.getElevationLoss())));
         float averageSpeed = mSpeedMeanValue.getMeanValue();
         mMaxSpeedView.setText(String.format(Locale.getDefault(), "%s: %s", resources.getString(R.string.max_speed), StringFormatter.speedH(mMaxSpeed)));
         mAverageSpeedView.setText(String.format(Locale.getDefault(), "%s: %s", resources.getString(R.string.average_speed), StringFormatter.speedH(averageSpeed)));
@@ -537,7 +539,7 @@ public class TrackInformation extends Fragment implements PopupMenu.OnMenuItemCl
         public void onNewPoint(boolean continuous, double lat, double lon, float elev, float speed, float trk, float accuracy, long time) {
             if (!continuous)
                 mSegmentCount++;
-            if (elev < mMinElevation && elev != 0)
+            if (elev < mMinElevation)
                 mMinElevation = elev;
             if (elev > mMaxElevation)
                 mMaxElevation = elev;
@@ -546,11 +548,13 @@ public class TrackInformation extends Fragment implements PopupMenu.OnMenuItemCl
                 mMaxSpeed = speed;
 
             if (BuildConfig.FULL_VERSION) {
-                int offset = (int) (time - mTrack.points.get(0).time) / 1000;
+                int offset = (int) (time - mTrack.getTime(0)) / 1000;
                 String xValue = "+" + DateUtils.formatElapsedTime(offset);
                 if (mElevationData != null) {
-                    int count = mElevationData.getDataSets().get(0).getEntryCount();
-                    mElevationData.addEntry(new Entry(elev, count), 0);
+                    if (!Float.isNaN(elev)) {
+                        int count = mElevationData.getDataSets().get(0).getEntryCount();
+                        mElevationData.addEntry(new Entry(elev, count), 0);
+                    }
                     mElevationData.addXValue(xValue);
                 }
                 if (mSpeedData != null) {
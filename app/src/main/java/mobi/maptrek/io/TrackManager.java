@@ -117,23 +117,32 @@ public class TrackManager extends Manager {
             throw new Exception("Only single track can be saved in mtrack format");
         Track track = source.tracks.get(0);
         if (progressListener != null)
-            progressListener.onProgressStarted(track.points.size());
+            progressListener.onProgressStarted(track.size());
         CodedOutputStream output = CodedOutputStream.newInstance(outputStream);
         output.writeUInt32(FIELD_VERSION, VERSION);
         int progress = 0;
-        for (Track.TrackPoint point : track.points) {
+        int size = track.size();
+        for (int i = 0; i < size; i++) {
+            int latitudeE6 = track.getLatitudeE6(i);
+            int longitudeE6 = track.getLongitudeE6(i);
+            float elevation = track.getElevation(i);
+            float speed = track.getSpeed(i);
+            float bearing = track.getBearing(i);
+            float accuracy = track.getAccuracy(i);
+            long time = track.getTime(i);
+            boolean continuous = track.isContinuous(i);
             output.writeTag(FIELD_POINT, WireFormat.WIRETYPE_LENGTH_DELIMITED);
-            output.writeRawVarint32(getSerializedPointSize(point));
-            output.writeInt32(FIELD_POINT_LATITUDE, point.latitudeE6);
-            output.writeInt32(FIELD_POINT_LONGITUDE, point.longitudeE6);
-            output.writeFloat(FIELD_POINT_ALTITUDE, point.elevation);
-            output.writeFloat(FIELD_POINT_SPEED, point.speed);
-            output.writeFloat(FIELD_POINT_BEARING, point.bearing);
-            output.writeFloat(FIELD_POINT_ACCURACY, point.accuracy);
-            output.writeUInt64(FIELD_POINT_TIMESTAMP, point.time);
-            if (!point.continuous)
+            output.writeRawVarint32(getSerializedPointSize(latitudeE6, longitudeE6, elevation, speed, bearing, accuracy, time, continuous));
+            output.writeInt32(FIELD_POINT_LATITUDE, latitudeE6);
+            output.writeInt32(FIELD_POINT_LONGITUDE, longitudeE6);
+            output.writeFloat(FIELD_POINT_ALTITUDE, elevation);
+            output.writeFloat(FIELD_POINT_SPEED, speed);
+            output.writeFloat(FIELD_POINT_BEARING, bearing);
+            output.writeFloat(FIELD_POINT_ACCURACY, accuracy);
+            output.writeUInt64(FIELD_POINT_TIMESTAMP, time);
+            if (!continuous)
                 //noinspection ConstantConditions
-                output.writeBool(8, point.continuous);
+                output.writeBool(8, continuous);
             progress++;
             if (progressListener != null)
                 progressListener.onProgressChanged(progress);
@@ -211,18 +220,18 @@ public class TrackManager extends Manager {
         track.addPointFast(continuous, latitudeE6, longitudeE6, altitude, speed, bearing, accuracy, timestamp);
     }
 
-    public int getSerializedPointSize(Track.TrackPoint point) {
+    public int getSerializedPointSize(int latitudeE6, int longitudeE6, float elevation, float speed, float bearing, float accuracy, long time, boolean continuous) {
         int size = 0;
-        size += CodedOutputStream.computeInt32Size(FIELD_POINT_LATITUDE, point.latitudeE6);
-        size += CodedOutputStream.computeInt32Size(FIELD_POINT_LONGITUDE, point.longitudeE6);
-        size += CodedOutputStream.computeFloatSize(FIELD_POINT_ALTITUDE, point.elevation);
-        size += CodedOutputStream.computeFloatSize(FIELD_POINT_SPEED, point.speed);
-        size += CodedOutputStream.computeFloatSize(FIELD_POINT_BEARING, point.bearing);
-        size += CodedOutputStream.computeFloatSize(FIELD_POINT_ACCURACY, point.accuracy);
-        size += CodedOutputStream.computeUInt64Size(FIELD_POINT_TIMESTAMP, point.time);
-        if (!point.continuous) {
+        size += CodedOutputStream.computeInt32Size(FIELD_POINT_LATITUDE, latitudeE6);
+        size += CodedOutputStream.computeInt32Size(FIELD_POINT_LONGITUDE, longitudeE6);
+        size += CodedOutputStream.computeFloatSize(FIELD_POINT_ALTITUDE, elevation);
+        size += CodedOutputStream.computeFloatSize(FIELD_POINT_SPEED, speed);
+        size += CodedOutputStream.computeFloatSize(FIELD_POINT_BEARING, bearing);
+        size += CodedOutputStream.computeFloatSize(FIELD_POINT_ACCURACY, accuracy);
+        size += CodedOutputStream.computeUInt64Size(FIELD_POINT_TIMESTAMP, time);
+        if (!continuous) {
             //noinspection ConstantConditions
-            size += CodedOutputStream.computeBoolSize(FIELD_POINT_CONTINUOUS, point.continuous);
+            size += CodedOutputStream.computeBoolSize(FIELD_POINT_CONTINUOUS, continuous);
         }
         return size;
     }
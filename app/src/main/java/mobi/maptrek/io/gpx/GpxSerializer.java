@@ -39,7 +39,7 @@ public class GpxSerializer {
         if (progressListener != null) {
             int size = source.waypoints.size();
             for (Track track : source.tracks)
-                size += track.points.size();
+                size += track.size();
             progressListener.onProgressStarted(size);
         }
 
@@ -113,27 +113,28 @@ public class GpxSerializer {
         }
         serializer.startTag(GpxFile.NS, GpxFile.TAG_TRKSEG);
 
-        boolean first = true;
-        for (Track.TrackPoint tp : track.points) {
-            if (!tp.continuous && !first) {
+        int size = track.size();
+        for (int i = 0; i < size; i++) {
+            if (!track.isContinuous(i) && i > 0) {
                 serializer.endTag(GpxFile.NS, GpxFile.TAG_TRKSEG);
                 serializer.startTag(GpxFile.NS, GpxFile.TAG_TRKSEG);
             }
             serializer.startTag(GpxFile.NS, GpxFile.TAG_TRKPT);
-            serializer.attribute("", GpxFile.ATTRIBUTE_LAT, String.valueOf(tp.latitudeE6 / 1E6));
-            serializer.attribute("", GpxFile.ATTRIBUTE_LON, String.valueOf(tp.longitudeE6 / 1E6));
-            if (tp.elevation != Float.NaN) {
+            serializer.attribute("", GpxFile.ATTRIBUTE_LAT, String.valueOf(track.getLatitudeE6(i) / 1E6));
+            serializer.attribute("", GpxFile.ATTRIBUTE_LON, String.valueOf(track.getLongitudeE6(i) / 1E6));
+            float elevation = track.getElevation(i);
+            if (!Float.isNaN(elevation)) {
                 serializer.startTag(GpxFile.NS, GpxFile.TAG_ELE);
-                serializer.text(String.valueOf(tp.elevation));
+                serializer.text(String.valueOf(elevation));
                 serializer.endTag(GpxFile.NS, GpxFile.TAG_ELE);
             }
-            if (tp.time > 0L) {
+            long time = track.getTime(i);
+            if (time > 0L) {
                 serializer.startTag(GpxFile.NS, GpxFile.TAG_TIME);
-                serializer.text(GpxFile.formatTime(new Date(tp.time)));
+                serializer.text(GpxFile.formatTime(new Date(time)));
                 serializer.endTag(GpxFile.NS, GpxFile.TAG_TIME);
             }
             serializer.endTag(GpxFile.NS, GpxFile.TAG_TRKPT);
-            first = false;
             progress++;
             if (progressListener != null)
                 progressListener.onProgressChanged(progress);
@@ -299,7 +299,7 @@ public class KmlParser {
             try {
                 int latitudeE6 = (int) (Double.parseDouble(coordinates[1]) * 1E6);
                 int longitudeE6 = (int) (Double.parseDouble(coordinates[0]) * 1E6);
-                float altitude = 0f;
+                float altitude = Float.NaN;
                 if (coordinates.length == 3)
                     altitude = (float) Double.parseDouble(coordinates[2]);
                 track.addPointFast(continuous, latitudeE6, longitudeE6, altitude, Float.NaN, Float.NaN, Float.NaN, 0L);
@@ -47,7 +47,7 @@ public class KmlSerializer {
         if (progressListener != null) {
             int size = source.waypoints.size();
             for (Track track : source.tracks)
-                size += track.points.size();
+                size += track.size();
             progressListener.onProgressStarted(size);
         }
 
@@ -131,10 +131,10 @@ public class KmlSerializer {
         }
         serializer.startTag(KmlFile.NS, KmlFile.TAG_TIME_SPAN);
         serializer.startTag(KmlFile.NS, KmlFile.TAG_BEGIN);
-        serializer.text(sdf.format(new Date(track.points.get(0).time)));
+        serializer.text(sdf.format(new Date(track.getTime(0))));
         serializer.endTag(KmlFile.NS, KmlFile.TAG_BEGIN);
         serializer.startTag(KmlFile.NS, KmlFile.TAG_END);
-        serializer.text(sdf.format(new Date(track.getLastPoint().time)));
+        serializer.text(sdf.format(new Date(track.getTime(track.size() - 1))));
         serializer.endTag(KmlFile.NS, KmlFile.TAG_END);
         serializer.endTag(KmlFile.NS, KmlFile.TAG_TIME_SPAN);
         serializer.startTag(KmlFile.NS, KmlFile.TAG_OPEN);
@@ -149,11 +149,11 @@ public class KmlSerializer {
         serializer.endTag(KmlFile.NS, KmlFile.TAG_STYLE);
 
         int part = 1;
-        boolean first = true;
         startTrackPart(serializer, part, track.name, track.style);
-        for (Track.TrackPoint point : track.points) {
-            if (!first) {
-                if (!point.continuous) {
+        int size = track.size();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                if (!track.isContinuous(i)) {
                     stopTrackPart(serializer);
                     part++;
                     startTrackPart(serializer, part, track.name, track.style);
@@ -161,14 +161,14 @@ public class KmlSerializer {
                     serializer.text(" ");
                 }
             }
-            serializer.text(String.valueOf(point.longitudeE6 / 1E6));
+            serializer.text(String.valueOf(track.getLongitudeE6(i) / 1E6));
             serializer.text(",");
-            serializer.text(String.valueOf(point.latitudeE6 / 1E6));
-            if (point.elevation != Float.NaN) {
+            serializer.text(String.valueOf(track.getLatitudeE6(i) / 1E6));
+            float elevation = track.getElevation(i);
+            if (!Float.isNaN(elevation)) {
                 serializer.text(",");
-                serializer.text(String.valueOf(point.elevation));
+                serializer.text(String.valueOf(elevation));
             }
-            first = false;
             progress++;
             if (progressListener != null)
                 progressListener.onProgressChanged(progress);
@@ -159,7 +159,7 @@ public class TrackLayer extends Layer {
                     mUpdatePoints = false;
                     int indexPos = 0;
                     index[indexPos] = -1;
-                    mNumPoints = size = mTrack.points.size();
+                    mNumPoints = size = mTrack.size();
 
                     double[] points = mPreprojected;
 
@@ -169,10 +169,10 @@ public class TrackLayer extends Layer {
                     }
 
                     for (int i = 0; i < size; i++) {
-                        Track.TrackPoint point = mTrack.points.get(i);
-                        MercatorProjection.project(point, points, i);
+                        points[i * 2] = MercatorProjection.longitudeToX(mTrack.getLongitudeE6(i) / 1E6);
+                        points[i * 2 + 1] = MercatorProjection.latitudeToY(mTrack.getLatitudeE6(i) / 1E6);
 
-                        if (!point.continuous && i > 0) {
+                        if (!mTrack.isContinuous(i) && i > 0) {
                             if (indexPos + 1 >= index.length)
                                 ensureIndexSize(indexPos + 1, true);
                             index[indexPos] = i;
@@ -31,6 +31,7 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.drawable.Icon;
 import android.location.GpsSatellite;
 import android.location.GpsStatus;
@@ -81,6 +82,19 @@ public class LocationService extends BaseLocationService implements LocationList
     private static final DateFormat TIME_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.getDefault());
 
     private static final int NOTIFICATION_ID = 25501;
+
+    // Track points are written in batches to avoid waking flash storage on every location fix
+    private static final int TRACK_BATCH_SIZE = 60;
+    private static final long TRACK_FLUSH_DELAY = 30000; // 30 seconds
+    private static final String SQL_INSERT_POINT = "INSERT INTO track (latitude, longitude, code, elevation, speed, track, accuracy, datetime) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_RAW_POINT = "INSERT INTO track_raw (latitude, longitude, code, elevation, speed, track, accuracy, datetime) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    // track is read in pages so that cursor window does not hold the whole track at once
+    private static final int TRACK_PAGE_SIZE = 2000;
+    private static final String SQL_SELECT_POINTS = "SELECT _id, latitude, longitude, code, elevation, speed, track, accuracy, datetime FROM ";
+    private static final String SQL_SELECT_POINTS_WHERE = " WHERE _id > ?";
+    private static final String SQL_SELECT_POINTS_PAGE = " ORDER BY _id LIMIT " + TRACK_PAGE_SIZE;
+    // maximum number of points held back by track simplifier
+    private static final int SIMPLIFIER_WINDOW_SIZE = 50;
     private static final boolean DEBUG_ERRORS = false;
 
     // Fake locations used for test purposes
@@ -105,6 +119,13 @@ public class LocationService extends BaseLocationService implements LocationList
 
     // Tracking
     private SQLiteDatabase mTrackDB = null;
+    private SQLiteStatement mInsertPointStatement = null;
+    private SQLiteStatement mInsertRawPointStatement = null;
+    private final TrackPointBuffer mPendingPoints = new TrackPointBuffer(TRACK_BATCH_SIZE);
+    private final TrackPointBuffer mPendingRawPoints = new TrackPointBuffer(TRACK_BATCH_SIZE);
+    private TrackSimplifier<Location> mTrackSimplifier = null;
+    private boolean mKeepRawTrack = false;
+    private final Handler mTrackHandler = new Handler();
     private boolean mTrackingEnabled = false;
     private boolean mForeground = false;
     private String mErrorMsg = "";
@@ -163,6 +184,9 @@ public class LocationService extends BaseLocationService implements LocationList
             mTrackingEnabled = true;
             mContinuous = false;
             mDistanceNotified = 0f;
+            int tolerance = Configuration.getTrackSimplification();
+            mTrackSimplifier = tolerance > 0 ? new TrackSimplifier<>(tolerance, SIMPLIFIER_WINDOW_SIZE) : null;
+            mKeepRawTrack = mTrackSimplifier != null && Configuration.getTrackKeepRaw();
             openDatabase();
             mTrackingStarted = SystemClock.uptimeMillis();
             mTrackStarted = System.currentTimeMillis();
@@ -170,7 +194,8 @@ public class LocationService extends BaseLocationService implements LocationList
         if (action.equals(DISABLE_TRACK) || action.equals(PAUSE_TRACK) && mTrackingEnabled) {
             mTrackingEnabled = false;
             mForeground = false;
-            updateDistanceTracked();
+            flushSimplifier();
+            flushTrack();
             closeDatabase();
             stopForeground(true);
             long trackedTime = (SystemClock.uptimeMillis() - mTrackingStarted) / 60000;
@@ -184,7 +209,7 @@ public class LocationService extends BaseLocationService implements LocationList
         }
         if (action.equals(ENABLE_BACKGROUND_TRACK)) {
             mForeground = true;
-            updateDistanceTracked();
+            flushTrack();
             startForeground(NOTIFICATION_ID, getNotification());
         }
         if (action.equals(DISABLE_BACKGROUND_TRACK)) {
@@ -198,7 +223,8 @@ public class LocationService extends BaseLocationService implements LocationList
 
     @Override
     public void onDestroy() {
-        updateDistanceTracked();
+        flushSimplifier();
+        flushTrack();
         PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
         disconnect();
         closeDatabase();
@@ -349,22 +375,31 @@ public class LocationService extends BaseLocationService implements LocationList
         }
     }
 
-    private void openDatabase() {
+    private synchronized void openDatabase() {
         //noinspection SpellCheckingInspection
         File path = new File(getExternalFilesDir("databases"), "track.sqlitedb");
         try {
             mTrackDB = SQLiteDatabase.openDatabase(path.getAbsolutePath(), null, SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+            // committed batches survive crashes, write-ahead log makes commits cheap
+            mTrackDB.enableWriteAheadLogging();
             //noinspection SpellCheckingInspection
             Cursor cursor = mTrackDB.rawQuery("SELECT DISTINCT tbl_name FROM sqlite_master WHERE tbl_name = 'track'", null);
             if (cursor.getCount() == 0) {
                 mTrackDB.execSQL("CREATE TABLE track (_id INTEGER PRIMARY KEY, latitude INTEGER, longitude INTEGER, code INTEGER, elevation REAL, speed REAL, track REAL, accuracy REAL, datetime INTEGER)");
             }
             cursor.close();
-            mDistanceTracked = 0f;
+            mTrackDB.execSQL("CREATE INDEX IF NOT EXISTS track_datetime ON track (datetime)");
+            // all recorded points, kept only if track is simplified and user wants to keep them
+            mTrackDB.execSQL("CREATE TABLE IF NOT EXISTS track_raw (_id INTEGER PRIMARY KEY, latitude INTEGER, longitude INTEGER, code INTEGER, elevation REAL, speed REAL, track REAL, accuracy REAL, datetime INTEGER)");
+            // when database is reopened to retry failed write, stored distance does not include
+            // pending points while tracked distance does, so it is kept
+            boolean pending = !mPendingPoints.isEmpty() || !mPendingRawPoints.isEmpty();
+            if (!pending)
+                mDistanceTracked = 0f;
             cursor = mTrackDB.rawQuery("SELECT DISTINCT tbl_name FROM sqlite_master WHERE tbl_name = 'track_properties'", null);
             if (cursor.getCount() == 0) {
                 mTrackDB.execSQL("CREATE TABLE track_properties (_id INTEGER PRIMARY KEY, distance REAL)");
-            } else {
+            } else if (!pending) {
                 Cursor propertiesCursor = mTrackDB.rawQuery("SELECT * FROM track_properties ORDER BY _id DESC LIMIT 1", null);
                 if (propertiesCursor.moveToFirst()) {
                     mDistanceTracked = propertiesCursor.getFloat(propertiesCursor.getColumnIndex("distance"));
@@ -372,6 +407,8 @@ public class LocationService extends BaseLocationService implements LocationList
                 propertiesCursor.close();
             }
             cursor.close();
+            mInsertPointStatement = mTrackDB.compileStatement(SQL_INSERT_POINT);
+            mInsertRawPointStatement = mTrackDB.compileStatement(SQL_INSERT_RAW_POINT);
             mTrackStarted = getTrackStartTime();
         } catch (SQLiteException e) {
             mTrackDB = null;
@@ -382,7 +419,15 @@ public class LocationService extends BaseLocationService implements LocationList
         }
     }
 
-    private void closeDatabase() {
+    private synchronized void closeDatabase() {
+        if (mInsertPointStatement != null) {
+            mInsertPointStatement.close();
+            mInsertPointStatement = null;
+        }
+        if (mInsertRawPointStatement != null) {
+            mInsertRawPointStatement.close();
+            mInsertRawPointStatement = null;
+        }
         if (mTrackDB != null) {
             mTrackDB.close();
             mTrackDB = null;
@@ -390,56 +435,106 @@ public class LocationService extends BaseLocationService implements LocationList
     }
 
     public Track getTrack() {
-        Track track = getTrack(0);
-        mDistanceTracked = track.getDistance();
-        return track;
+        // tracked distance is not taken from track as it can be simplified, distance is
+        // accounted on all points and is stored along with them
+        return getTrack(0);
     }
 
     public Track getTrack(long limit) {
         if (mTrackDB == null)
             openDatabase();
+        flushTrack();
         Track track = new Track(getString(R.string.currentTrack), true);
         if (mTrackDB == null)
             return track;
-        String limitStr = limit > 0 ? " LIMIT " + limit : "";
-        Cursor cursor = mTrackDB.rawQuery("SELECT * FROM track ORDER BY _id DESC" + limitStr, null);
-        for (boolean hasItem = cursor.moveToLast(); hasItem; hasItem = cursor.moveToPrevious()) {
-            int latitudeE6 = cursor.getInt(cursor.getColumnIndex("latitude"));
-            int longitudeE6 = cursor.getInt(cursor.getColumnIndex("longitude"));
-            float elevation = cursor.getFloat(cursor.getColumnIndex("elevation"));
-            float speed = cursor.getFloat(cursor.getColumnIndex("speed"));
-            float bearing = cursor.getFloat(cursor.getColumnIndex("track"));
-            float accuracy = cursor.getFloat(cursor.getColumnIndex("accuracy"));
-            int code = cursor.getInt(cursor.getColumnIndex("code"));
-            long time = cursor.getLong(cursor.getColumnIndex("datetime"));
-            track.addPoint(code == 0, latitudeE6, longitudeE6, elevation, speed, bearing, accuracy, time);
+        long first = 0L;
+        if (limit > 0) {
+            Cursor cursor = mTrackDB.rawQuery("SELECT _id FROM track ORDER BY _id DESC LIMIT 1 OFFSET " + (limit - 1), null);
+            if (cursor.moveToFirst())
+                first = cursor.getLong(0) - 1;
+            cursor.close();
         }
-        cursor.close();
+        readTrack(track, "track", first, "", null);
+        return track;
+    }
+
+    /**
+     * Returns all recorded points of current track if they were kept, otherwise returns empty
+     * track.
+     */
+    public Track getRawTrack() {
+        if (mTrackDB == null)
+            openDatabase();
+        flushTrack();
+        Track track = new Track(getString(R.string.currentTrack), true);
+        if (mTrackDB == null)
+            return track;
+        readTrack(track, "track_raw", 0L, "", null);
         return track;
     }
 
     public Track getTrack(long start, long end) {
         if (mTrackDB == null)
             openDatabase();
+        flushTrack();
         Track track = new Track();
         if (mTrackDB == null)
             return track;
-        Cursor cursor = mTrackDB.rawQuery("SELECT * FROM track WHERE datetime >= ? AND datetime <= ? ORDER BY _id DESC", new String[]{String.valueOf(start), String.valueOf(end)});
-        for (boolean hasItem = cursor.moveToLast(); hasItem; hasItem = cursor.moveToPrevious()) {
-            int latitudeE6 = cursor.getInt(cursor.getColumnIndex("latitude"));
-            int longitudeE6 = cursor.getInt(cursor.getColumnIndex("longitude"));
-            float elevation = cursor.getFloat(cursor.getColumnIndex("elevation"));
-            float speed = cursor.getFloat(cursor.getColumnIndex("speed"));
-            float bearing = cursor.getFloat(cursor.getColumnIndex("track"));
-            float accuracy = cursor.getFloat(cursor.getColumnIndex("accuracy"));
-            int code = cursor.getInt(cursor.getColumnIndex("code"));
-            long time = cursor.getLong(cursor.getColumnIndex("datetime"));
-            track.addPoint(code == 0, latitudeE6, longitudeE6, elevation, speed, bearing, accuracy, time);
+        // resolve _id bounds with datetime index once and then page by primary key
+        String[] args = new String[]{String.valueOf(start), String.valueOf(end)};
+        long first = 0L, last = 0L;
+        Cursor cursor = mTrackDB.rawQuery("SELECT MIN(_id), MAX(_id) FROM track WHERE datetime >= ? AND datetime <= ?", args);
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            first = cursor.getLong(0) - 1;
+            last = cursor.getLong(1);
         }
         cursor.close();
+        if (last == 0L)
+            return track;
+        // unary plus keeps datetime index out of paged query, points are scanned by _id
+        readTrack(track, "track", first, " AND _id <= ? AND +datetime >= ? AND +datetime <= ?",
+                new String[]{String.valueOf(last), args[0], args[1]});
         return track;
     }
 
+    /**
+     * Reads track points page by page in recording order.
+     *
+     * @param table     table to read points from
+     * @param first     _id after which points are read
+     * @param selection additional selection clause, should start with AND
+     * @param args      arguments of selection clause
+     */
+    private void readTrack(Track track, String table, long first, String selection, String[] args) {
+        String sql = SQL_SELECT_POINTS + table + SQL_SELECT_POINTS_WHERE + selection + SQL_SELECT_POINTS_PAGE;
+        String[] selectionArgs = new String[args != null ? args.length + 1 : 1];
+        if (args != null)
+            System.arraycopy(args, 0, selectionArgs, 1, args.length);
+        long last = first;
+        int count;
+        do {
+            selectionArgs[0] = String.valueOf(last);
+            Cursor cursor = mTrackDB.rawQuery(sql, selectionArgs);
+            // columns are listed explicitly, indexes match select statement
+            count = 0;
+            while (cursor.moveToNext()) {
+                last = cursor.getLong(0);
+                int latitudeE6 = cursor.getInt(1);
+                int longitudeE6 = cursor.getInt(2);
+                int code = cursor.getInt(3);
+                // NaN elevation is stored as NULL
+                float elevation = cursor.isNull(4) ? Float.NaN : cursor.getFloat(4);
+                float speed = cursor.getFloat(5);
+                float bearing = cursor.getFloat(6);
+                float accuracy = cursor.getFloat(7);
+                long time = cursor.getLong(8);
+                track.addPoint(code == 0, latitudeE6, longitudeE6, elevation, speed, bearing, accuracy, time);
+                count++;
+            }
+            cursor.close();
+        } while (count == TRACK_PAGE_SIZE);
+    }
+
     public long getTrackStartTime() {
         long res = Long.MIN_VALUE;
         if (mTrackDB == null)
@@ -457,6 +552,7 @@ public class LocationService extends BaseLocationService implements LocationList
         long res = Long.MAX_VALUE;
         if (mTrackDB == null)
             openDatabase();
+        flushTrack();
         if (mTrackDB == null)
             return res;
         Cursor cursor = mTrackDB.rawQuery("SELECT MAX(datetime) FROM track", null);
@@ -466,23 +562,35 @@ public class LocationService extends BaseLocationService implements LocationList
         return res;
     }
 
-    public void clearTrack() {
+    public synchronized void clearTrack() {
         mDistanceTracked = 0f;
+        mPendingPoints.clear();
+        mPendingRawPoints.clear();
+        mTrackHandler.removeCallbacks(mFlushTrack);
         if (mTrackDB == null)
             openDatabase();
         if (mTrackDB != null) {
             mTrackDB.execSQL("DELETE FROM track");
+            mTrackDB.execSQL("DELETE FROM track_raw");
             mTrackDB.execSQL("DELETE FROM track_properties");
         }
     }
 
     public void tryToSaveTrack() {
         mLastTrack = getTrack();
-        if (mLastTrack.points.size() == 0)
+        if (mLastTrack.size() == 0)
             return;
+        // save complete track if user wants to keep it and it was kept for the whole track
+        if (mKeepRawTrack) {
+            Track rawTrack = getRawTrack();
+            // simplified track can lag behind because of held back points
+            if (rawTrack.size() > 0 && rawTrack.getTime(0) == mLastTrack.getTime(0)
+                    && rawTrack.getTime(rawTrack.size() - 1) >= mLastTrack.getTime(mLastTrack.size() - 1))
+                mLastTrack = rawTrack;
+        }
 
-        long startTime = mLastTrack.points.get(0).time;
-        long stopTime = mLastTrack.getLastPoint().time;
+        long startTime = mLastTrack.getTime(0);
+        long stopTime = mLastTrack.getTime(mLastTrack.size() - 1);
         long period = stopTime - startTime;
         int flags = DateUtils.FORMAT_NO_NOON | DateUtils.FORMAT_NO_MIDNIGHT;
 
@@ -532,7 +640,7 @@ public class LocationService extends BaseLocationService implements LocationList
         }
         FileDataSource source = new FileDataSource();
         //FIXME Not UTC time!
-        source.name = TIME_FORMAT.format(new Date(mLastTrack.points.get(0).time));
+        source.name = TIME_FORMAT.format(new Date(mLastTrack.getTime(0)));
         source.tracks.add(mLastTrack);
         Manager.save(this, source, new Manager.OnSaveListener() {
             @Override
@@ -561,36 +669,82 @@ public class LocationService extends BaseLocationService implements LocationList
         }
     }
 
-    public void addPoint(boolean continuous, double latitude, double longitude, float elevation, float speed, float bearing, float accuracy, long time) {
+    /**
+     * Queues point for writing, points are written when batch is full or after a delay.
+     * Buffers are shared with track readers that flush them from other threads.
+     */
+    public synchronized void addPoint(boolean continuous, double latitude, double longitude, float elevation, float speed, float bearing, float accuracy, long time) {
+        if (mPendingPoints.isEmpty() && mPendingRawPoints.isEmpty())
+            mTrackHandler.postDelayed(mFlushTrack, TRACK_FLUSH_DELAY);
+        mPendingPoints.add(continuous, (int) (latitude * 1E6), (int) (longitude * 1E6), elevation, speed, bearing, accuracy, time);
+        if (mPendingPoints.isFull())
+            flushTrack();
+    }
+
+    /**
+     * Queues point for writing to complete (not simplified) track.
+     */
+    private synchronized void addRawPoint(boolean continuous, double latitude, double longitude, float elevation, float speed, float bearing, float accuracy, long time) {
+        if (mPendingPoints.isEmpty() && mPendingRawPoints.isEmpty())
+            mTrackHandler.postDelayed(mFlushTrack, TRACK_FLUSH_DELAY);
+        mPendingRawPoints.add(continuous, (int) (latitude * 1E6), (int) (longitude * 1E6), elevation, speed, bearing, accuracy, time);
+        if (mPendingRawPoints.isFull())
+            flushTrack();
+    }
+
+    /**
+     * Writes queued points and tracked distance in single transaction. If writing fails points
+     * are kept and written after database is reopened.
+     */
+    private synchronized void flushTrack() {
+        mTrackHandler.removeCallbacks(mFlushTrack);
+        if (mPendingPoints.isEmpty() && mPendingRawPoints.isEmpty())
+            return;
         if (mTrackDB == null) {
             openDatabase();
-            if (mTrackDB == null)
+            if (mTrackDB == null) {
+                mTrackHandler.postDelayed(mFlushTrack, TRACK_FLUSH_DELAY);
                 return;
+            }
         }
 
-        ContentValues values = new ContentValues();
-        values.put("latitude", (int) (latitude * 1E6));
-        values.put("longitude", (int) (longitude * 1E6));
-        values.put("code", continuous ? 0 : 1);
-        values.put("elevation", elevation);
-        values.put("speed", speed);
-        values.put("track", bearing);
-        values.put("accuracy", accuracy);
-        values.put("datetime", time);
-
+        boolean failed = false;
+        mTrackDB.beginTransaction();
         try {
-            mTrackDB.insertOrThrow("track", null, values);
+            mPendingPoints.write(mInsertPointStatement);
+            mPendingRawPoints.write(mInsertRawPointStatement);
+            updateDistanceTracked();
+            mTrackDB.setTransactionSuccessful();
         } catch (SQLException e) {
-            logger.error("addPoint", e);
+            logger.error("flushTrack", e);
             mErrorMsg = e.getMessage();
             mErrorTime = System.currentTimeMillis();
+            failed = true;
+        } finally {
+            mTrackDB.endTransaction();
+        }
+        if (failed) {
             updateNotification();
             closeDatabase();
+            mTrackHandler.postDelayed(mFlushTrack, TRACK_FLUSH_DELAY);
+            return;
         }
+        logger.debug("Written {} track points", mPendingPoints.size());
+        mPendingPoints.clear();
+        mPendingRawPoints.clear();
     }
 
-    private void writeTrackPoint(final Location loc, final float distance, final boolean continuous) {
-        addPoint(continuous, loc.getLatitude(), loc.getLongitude(), (float) loc.getAltitude(), loc.getSpeed(), loc.getBearing(), loc.getAccuracy(), loc.getTime());
+    private final Runnable mFlushTrack = new Runnable() {
+        @Override
+        public void run() {
+            flushTrack();
+        }
+    };
+
+    /**
+     * Accounts recorded point and passes it to simplifier if track is simplified.
+     */
+    private void recordTrackPoint(final Location loc, final float distance, final boolean continuous) {
         mDistanceTracked += distance;
         mDistanceNotified += distance;
         if (mDistanceNotified > mDistanceTracked / 100) {
@@ -599,11 +753,47 @@ public class LocationService extends BaseLocationService implements LocationList
         }
         mLastWrittenLocation = loc;
 
+        if (mTrackSimplifier == null) {
+            writeTrackPoint(loc, continuous);
+            return;
+        }
+        if (mKeepRawTrack)
+            addRawPoint(continuous, loc.getLatitude(), loc.getLongitude(), getElevation(loc), loc.getSpeed(), loc.getBearing(), loc.getAccuracy(), loc.getTime());
+        if (!continuous)
+            flushSimplifier();
+        Location point = mTrackSimplifier.add(loc, loc.getLatitude(), loc.getLongitude());
+        // simplifier returns either new point or held back continuous point
+        if (point != null)
+            writeTrackPoint(point, point != loc || continuous);
+    }
+
+    /**
+     * Writes point held back by simplifier, should be called when track segment ends.
+     */
+    private void flushSimplifier() {
+        if (mTrackSimplifier == null)
+            return;
+        Location point = mTrackSimplifier.flush();
+        if (point != null)
+            writeTrackPoint(point, true);
+    }
+
+    private void writeTrackPoint(final Location loc, final boolean continuous) {
+        float elevation = getElevation(loc);
+        addPoint(continuous, loc.getLatitude(), loc.getLongitude(), elevation, loc.getSpeed(), loc.getBearing(), loc.getAccuracy(), loc.getTime());
+
         for (ITrackingListener callback : mTrackingCallbacks) {
-            callback.onNewPoint(continuous, loc.getLatitude(), loc.getLongitude(), (float) loc.getAltitude(), loc.getSpeed(), loc.getBearing(), loc.getAccuracy(), loc.getTime());
+            callback.onNewPoint(continuous, loc.getLatitude(), loc.getLongitude(), elevation, loc.getSpeed(), loc.getBearing(), loc.getAccuracy(), loc.getTime());
         }
     }
 
+    /**
+     * Returns location altitude or NaN if location has no altitude.
+     */
+    private static float getElevation(Location loc) {
+        return loc.hasAltitude() ? (float) loc.getAltitude() : Float.NaN;
+    }
+
     private void writeTrack(Location loc, boolean continuous) {
         float distance = 0;
         long time = 0;
@@ -612,16 +802,18 @@ public class LocationService extends BaseLocationService implements LocationList
             time = loc.getTime() - mLastWrittenLocation.getTime();
         }
         if (mLastWrittenLocation == null || !continuous || time > mMaxTime || distance > mMinDistance && time > mMinTime) {
-            writeTrackPoint(loc, distance, continuous);
+            recordTrackPoint(loc, distance, continuous);
         }
     }
 
     private void tearTrack() {
         if (mLastKnownLocation != mLastWrittenLocation && !"unknown".equals(mLastKnownLocation.getProvider())) {
             float distance = mLastWrittenLocation != null ? mLastKnownLocation.distanceTo(mLastWrittenLocation) : 0f;
-            writeTrackPoint(mLastKnownLocation, distance, mContinuous);
+            recordTrackPoint(mLastKnownLocation, distance, mContinuous);
         }
+        flushSimplifier();
         mContinuous = false;
+        flushTrack();
     }
 
     private void updateLocation() {
@@ -979,7 +1171,7 @@ public class LocationService extends BaseLocationService implements LocationList
         }
 
         @Override
-        public void clearTrack() {
+        public synchronized void clearTrack() {
             LocationService.this.clearTrack();
         }
 
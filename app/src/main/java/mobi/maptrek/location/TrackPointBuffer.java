@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.location;
+
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+
+/**
+ * Buffer of recorded track points that are not written to database yet. Points are kept in
+ * primitive columns so that recording does not allocate objects. Buffer is considered full when
+ * it holds a batch of points but it grows if points can not be written in time.
+ */
+class TrackPointBuffer {
+    private final int mBatchSize;
+    private int[] mLatitudes;
+    private int[] mLongitudes;
+    private boolean[] mContinuous;
+    private float[] mElevations;
+    private float[] mSpeeds;
+    private float[] mBearings;
+    private float[] mAccuracies;
+    private long[] mTimes;
+    private int mSize;
+
+    TrackPointBuffer(int batchSize) {
+        mBatchSize = batchSize;
+        mLatitudes = new int[batchSize];
+        mLongitudes = new int[batchSize];
+        mContinuous = new boolean[batchSize];
+        mElevations = new float[batchSize];
+        mSpeeds = new float[batchSize];
+        mBearings = new float[batchSize];
+        mAccuracies = new float[batchSize];
+        mTimes = new long[batchSize];
+        mSize = 0;
+    }
+
+    void add(boolean continuous, int latitudeE6, int longitudeE6, float elevation, float speed, float bearing, float accuracy, long time) {
+        if (mSize == mLatitudes.length)
+            grow();
+        mLatitudes[mSize] = latitudeE6;
+        mLongitudes[mSize] = longitudeE6;
+        mContinuous[mSize] = continuous;
+        mElevations[mSize] = elevation;
+        mSpeeds[mSize] = speed;
+        mBearings[mSize] = bearing;
+        mAccuracies[mSize] = accuracy;
+        mTimes[mSize] = time;
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = mLatitudes.length + mBatchSize;
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mContinuous = Arrays.copyOf(mContinuous, capacity);
+        mElevations = Arrays.copyOf(mElevations, capacity);
+        mSpeeds = Arrays.copyOf(mSpeeds, capacity);
+        mBearings = Arrays.copyOf(mBearings, capacity);
+        mAccuracies = Arrays.copyOf(mAccuracies, capacity);
+        mTimes = Arrays.copyOf(mTimes, capacity);
+    }
+
+    /**
+     * Inserts buffered points with provided statement. Statement should expect latitude,
+     * longitude, code, elevation, speed, track, accuracy and datetime (in that particular order).
+     */
+    void write(SQLiteStatement statement) {
+        for (int i = 0; i < mSize; i++) {
+            statement.bindLong(1, mLatitudes[i]);
+            statement.bindLong(2, mLongitudes[i]);
+            statement.bindLong(3, mContinuous[i] ? 0 : 1);
+            statement.bindDouble(4, mElevations[i]);
+            statement.bindDouble(5, mSpeeds[i]);
+            statement.bindDouble(6, mBearings[i]);
+            statement.bindDouble(7, mAccuracies[i]);
+            statement.bindLong(8, mTimes[i]);
+            statement.executeInsert();
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    boolean isFull() {
+        return mSize >= mBatchSize;
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+}
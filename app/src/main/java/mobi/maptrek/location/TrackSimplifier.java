@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.location;
+
+import java.util.Arrays;
+
+/**
+ * Streaming track simplifier. It keeps a window of points that follow the last written (anchor)
+ * point while all of them lie within tolerance of the line from anchor to the newest point.
+ * When this no longer holds, or window is full, the last point that still satisfied the
+ * condition is written and becomes new anchor. This is an opening window variant of
+ * Douglas-Peucker algorithm with bounded memory and bounded delay. Simplifier works on
+ * plain coordinates and returns points passed along with them as is.
+ */
+class TrackSimplifier<T> {
+    private static final double EARTH_RADIUS = 6371009d; // meters
+
+    private final double mTolerance;
+    private final Object[] mWindow;
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private int mSize;
+    private boolean mAnchored;
+    // anchor related values used for local projection
+    private double mAnchorLatitude;
+    private double mAnchorLongitude;
+    private double mLongitudeScale;
+
+    /**
+     * @param tolerance  maximum distance in meters between dropped points and simplified track
+     * @param windowSize maximum number of points that can be held back
+     */
+    TrackSimplifier(float tolerance, int windowSize) {
+        mTolerance = tolerance;
+        mWindow = new Object[windowSize];
+        mLatitudes = new double[windowSize];
+        mLongitudes = new double[windowSize];
+        mSize = 0;
+    }
+
+    /**
+     * Adds point to simplifier. Returned point is either the added one (it should be written
+     * preserving its continuity) or one of previously added continuous points.
+     *
+     * @return point that should be written or null if nothing should be written now
+     */
+    T add(T point, double latitude, double longitude) {
+        if (!mAnchored) {
+            setAnchor(latitude, longitude);
+            return point;
+        }
+        if (mSize < mWindow.length && fits(latitude, longitude)) {
+            put(mSize++, point, latitude, longitude);
+            return null;
+        }
+        T floater = get(mSize - 1);
+        setAnchor(mLatitudes[mSize - 1], mLongitudes[mSize - 1]);
+        Arrays.fill(mWindow, 0, mSize, null);
+        put(0, point, latitude, longitude);
+        mSize = 1;
+        return floater;
+    }
+
+    /**
+     * Releases held back point, should be called when track segment ends. Next added point
+     * starts new segment.
+     *
+     * @return point that should be written or null if there is no such point
+     */
+    T flush() {
+        T floater = mSize > 0 ? get(mSize - 1) : null;
+        Arrays.fill(mWindow, 0, mSize, null);
+        mSize = 0;
+        mAnchored = false;
+        return floater;
+    }
+
+    private void put(int index, T point, double latitude, double longitude) {
+        mWindow[index] = point;
+        mLatitudes[index] = latitude;
+        mLongitudes[index] = longitude;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int index) {
+        return (T) mWindow[index];
+    }
+
+    private void setAnchor(double latitude, double longitude) {
+        mAnchored = true;
+        mAnchorLatitude = latitude;
+        mAnchorLongitude = longitude;
+        mLongitudeScale = Math.cos(Math.toRadians(mAnchorLatitude));
+    }
+
+    /**
+     * Checks if all points in window are within tolerance of the line from anchor to
+     * specified location. Points are projected to a local plane centered at anchor, which is
+     * precise enough for the distances covered by window.
+     */
+    private boolean fits(double latitude, double longitude) {
+        double x = getX(longitude);
+        double y = getY(latitude);
+        double length = x * x + y * y;
+        double tolerance = mTolerance * mTolerance;
+        for (int i = 0; i < mSize; i++) {
+            double px = getX(mLongitudes[i]);
+            double py = getY(mLatitudes[i]);
+            double t = length > 0d ? (px * x + py * y) / length : 0d;
+            if (t < 0d)
+                t = 0d;
+            else if (t > 1d)
+                t = 1d;
+            double dx = px - t * x;
+            double dy = py - t * y;
+            if (dx * dx + dy * dy > tolerance)
+                return false;
+        }
+        return true;
+    }
+
+    private double getX(double longitude) {
+        return Math.toRadians(longitude - mAnchorLongitude) * mLongitudeScale * EARTH_RADIUS;
+    }
+
+    private double getY(double latitude) {
+        return Math.toRadians(latitude - mAnchorLatitude) * EARTH_RADIUS;
+    }
+}
@@ -133,8 +133,6 @@ public class MapIndex implements Serializable {
                 MapFile mapFile = new MapFile(tileSource.getName());
                 mapFile.tileSource = tileSource;
                 mapFile.boundingBox = WORLD_BOUNDING_BOX;
-                //TODO Implement tile cache expiration
-                //tileProvider.tileExpiration = onlineMapTileExpiration;
                 mMaps.add(mapFile);
             }
         }
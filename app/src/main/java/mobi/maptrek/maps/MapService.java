@@ -111,6 +111,11 @@ public class MapService extends IntentService {
             if (processDownload(mapIndex, x, y, hillshade, uri.getPath(),
                     new OperationProgressListener(notificationManager, builder))) {
                 application.sendBroadcast(new Intent(BROADCAST_MAP_ADDED).putExtra(EXTRA_X, x).putExtra(EXTRA_Y, y));
+                if (!hillshade) {
+                    // map is already displayed, index its names for search
+                    builder.setContentTitle(getString(R.string.title_fts_update));
+                    mapIndex.updateFullTextIndex(new OperationProgressListener(notificationManager, builder));
+                }
                 builder.setContentText(getString(R.string.complete));
                 notificationManager.notify(0, builder.build());
                 notificationManager.cancel(0);
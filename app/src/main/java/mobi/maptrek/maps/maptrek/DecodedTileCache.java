@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.maps.maptrek;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory bounded LRU cache of decoded native tiles. Tiles are keyed by native coordinates
+ * so that all overzoomed tiles share single decoded parent.
+ */
+class DecodedTileCache {
+    /**
+     * Marks tiles that are known to be absent from map so that they are not queried again.
+     */
+    static final ExtendedMapElement[] EMPTY_TILE = new ExtendedMapElement[0];
+
+    // rough estimate of element object, its arrays, tag set and label position headers
+    private static final int ELEMENT_OVERHEAD = 160;
+
+    private final LinkedHashMap<Long, ExtendedMapElement[]> mCache;
+    private final long mMaxSize;
+    private long mSize;
+
+    DecodedTileCache(long maxSize) {
+        mCache = new LinkedHashMap<>(64, 0.75f, true);
+        mMaxSize = maxSize;
+        mSize = 0L;
+    }
+
+    ExtendedMapElement[] get(long key) {
+        synchronized (mCache) {
+            return mCache.get(key);
+        }
+    }
+
+    void put(long key, ExtendedMapElement[] elements) {
+        long size = sizeOf(elements);
+        if (size > mMaxSize)
+            return;
+        synchronized (mCache) {
+            ExtendedMapElement[] previous = mCache.put(key, elements);
+            if (previous != null)
+                mSize -= sizeOf(previous);
+            mSize += size;
+            Iterator<Map.Entry<Long, ExtendedMapElement[]>> iterator = mCache.entrySet().iterator();
+            while (mSize > mMaxSize && iterator.hasNext()) {
+                Map.Entry<Long, ExtendedMapElement[]> eldest = iterator.next();
+                mSize -= sizeOf(eldest.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (mCache) {
+            mCache.clear();
+            mSize = 0L;
+        }
+    }
+
+    private static long sizeOf(ExtendedMapElement[] elements) {
+        long size = 16L + elements.length * 4L;
+        for (ExtendedMapElement element : elements) {
+            size += ELEMENT_OVERHEAD;
+            size += element.points.length * 4L;
+            size += element.index.length * 4L;
+            size += element.tags.size() * 4L;
+        }
+        return size;
+    }
+}
@@ -16,9 +16,18 @@
 
 package mobi.maptrek.maps.maptrek;
 
+import org.oscim.core.GeometryBuffers;
 import org.oscim.core.MapElement;
 
 public class ExtendedMapElement extends MapElement {
+    // element classification flags computed by decoder from tile tags
+    static final int FLAG_CONTOUR = 1;
+    static final int FLAG_BUILDING = 1 << 1;
+    static final int FLAG_BUILDING_PART = 1 << 2;
+    static final int FLAG_TUNNEL = 1 << 3;
+    static final int FLAG_PLATFORM = 1 << 4;
+    static final int FLAG_TREE = 1 << 5;
+
     public long id = 0L;
     public int buildingHeight = 0;
     public int buildingMinHeight = 0;
@@ -28,14 +37,106 @@ public class ExtendedMapElement extends MapElement {
     boolean hasLabelPosition = true;
     public MapTrekDataSource database;
     public int kind = 0;
-    boolean isContour = false;
-    boolean isBuilding = false;
-    boolean isBuildingPart = false;
+    int flags = 0;
+    // element is displayed only if some of its kinds is visible
+    boolean isKindOnly = false;
+
+    ExtendedMapElement() {
+        super();
+    }
+
+    /**
+     * Creates compact copy of decoded element, geometry arrays are trimmed to the used size.
+     */
+    ExtendedMapElement(ExtendedMapElement element) {
+        super((GeometryBuffers.getPointsLength(element) + 1) >> 1, GeometryBuffers.getIndexLength(element));
+        int pointsLength = GeometryBuffers.getPointsLength(element);
+        System.arraycopy(element.points, 0, points, 0, pointsLength);
+        System.arraycopy(element.index, 0, index, 0, index.length);
+        pointPos = pointsLength;
+        type = element.type;
+        copyData(element);
+    }
+
+    /**
+     * Replaces contents of this element with the contents of provided element, reusing
+     * allocated buffers.
+     */
+    void set(ExtendedMapElement element) {
+        int pointsLength = GeometryBuffers.getPointsLength(element);
+        int indexLength = GeometryBuffers.getIndexLength(element);
+        ensurePointSize((pointsLength + 1) >> 1, false);
+        ensureIndexSize(indexLength, false);
+        System.arraycopy(element.points, 0, points, 0, pointsLength);
+        System.arraycopy(element.index, 0, index, 0, indexLength);
+        // set end marker
+        if (indexLength < index.length)
+            index[indexLength] = -1;
+        pointPos = pointsLength;
+        type = element.type;
+        copyData(element);
+    }
+
+    /**
+     * Adds kind tags visible at specified zoom level.
+     *
+     * @return false if element should not be displayed at this zoom level
+     */
+    boolean setKindTags(int zoom) {
+        int kind = this.kind >> 3;
+        boolean someKind = kind > 0;
+        boolean hasKind = false;
+        for (int i = 0; i < 16; i++) {
+            if ((kind & 0x00000001) > 0 && Tags.kindZooms[i] <= zoom) {
+                tags.add(TagTable.getKindTag(i));
+                hasKind = true;
+            }
+            kind = kind >> 1;
+        }
+        if (isKindOnly && !hasKind)
+            return false;
+        if (someKind)
+            tags.add(TagTable.TAG_KIND);
+        return true;
+    }
+
+    private void copyData(ExtendedMapElement element) {
+        tags.clear();
+        for (int i = 0, n = element.tags.size(); i < n; i++)
+            tags.add(element.tags.get(i));
+        layer = element.layer;
+        labelPosition = null;
+        if (element.labelPosition != null)
+            setLabelPosition(element.labelPosition.x, element.labelPosition.y);
+        id = element.id;
+        kind = element.kind;
+        isKindOnly = element.isKindOnly;
+        hasLabelPosition = element.hasLabelPosition;
+        database = element.database;
+        elevation = element.elevation;
+        buildingHeight = element.buildingHeight;
+        buildingMinHeight = element.buildingMinHeight;
+        buildingColor = element.buildingColor;
+        roofColor = element.roofColor;
+        flags = element.flags;
+    }
+
+    boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * Returns true if element is a part of building but not a building itself.
+     */
+    boolean isSeparateBuildingPart() {
+        return (flags & (FLAG_BUILDING | FLAG_BUILDING_PART)) == FLAG_BUILDING_PART;
+    }
 
     void clearData() {
         id = 0L;
         layer = 5;
         kind = 0;
+        isKindOnly = false;
         hasLabelPosition = true;
         labelPosition = null;
         database = null;
@@ -44,8 +145,6 @@ public class ExtendedMapElement extends MapElement {
         buildingMinHeight = 0;
         buildingColor = 0;
         roofColor = 0;
-        isContour = false;
-        isBuilding = false;
-        isBuildingPart = false;
+        flags = 0;
     }
 }
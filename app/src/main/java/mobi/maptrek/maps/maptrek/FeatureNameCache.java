@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.maps.maptrek;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of resolved feature names. Map is labeled in single language at a time, so cache
+ * holds names of one language and is reset when other language is requested.
+ */
+class FeatureNameCache {
+    /**
+     * Marks features that are known to have no name.
+     */
+    static final String NO_NAME = "";
+
+    private static final int CACHE_SIZE = 4096;
+
+    private final Map<Long, String> mCache = new LinkedHashMap<Long, String>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private int mLang = -1;
+
+    /**
+     * Returns cached name, {@link #NO_NAME} if feature has no name or null if it is not cached.
+     */
+    synchronized String get(int lang, long id) {
+        if (lang != mLang)
+            return null;
+        return mCache.get(id);
+    }
+
+    synchronized void put(int lang, long id, String name) {
+        if (lang != mLang) {
+            mCache.clear();
+            mLang = lang;
+        }
+        mCache.put(id, name != null ? name : NO_NAME);
+    }
+
+    synchronized void clear() {
+        mCache.clear();
+    }
+}
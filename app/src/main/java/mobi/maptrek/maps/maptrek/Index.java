@@ -23,6 +23,7 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
@@ -33,8 +34,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
@@ -58,24 +59,48 @@ import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_MAPS_HILLSH
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_MAPS_VERSION;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_MAPS_X;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_MAPS_Y;
-import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_NAMES_NAME;
-import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_FEATURES;
-import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_FEATURE_NAMES;
-import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_NAMES;
-import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_NAMES_FTS;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_ATTACH_IMPORT;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_CLEAR_ORPHAN_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_COLLECT_CHANGED_FEATURE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_COLLECT_OWNED_FEATURE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_COLLECT_STALE_FEATURE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_CREATE_ORPHAN_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_IMPORT_FEATURES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_IMPORT_FEATURE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_IMPORT_MAP_FEATURES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_IMPORT_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_IMPORT_NAMES_FTS_PENDING;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_IMPORT_TILES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_INSERT_NAME_FTS_PENDING;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_AREA_MAP_FEATURES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_CHANGED_FEATURE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_ORPHAN_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_ORPHAN_NAMES_FTS;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_ORPHAN_NAMES_FTS_PENDING;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_OWNED_FEATURES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_OWNED_FEATURE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_STALE_FEATURES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_STALE_FEATURE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_STALE_MAP_FEATURES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_STALE_TILES;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_REMOVE_TILES;
-import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_SELECT_UNUSED_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_SELECT_AREA_FEATURES_BOUND;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_UPDATE_FEATURES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_UPDATE_FEATURE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_UPDATE_MAP_FEATURES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_UPDATE_NAMES;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.SQL_UPDATE_TILES;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_FEATURES;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_FEATURE_NAMES;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_INFO;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_MAPS;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_MAP_FEATURES;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_NAMES;
-import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_NAMES_FTS;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_TILES;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.WHERE_INFO_NAME;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.WHERE_MAPS_PRESENT;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.WHERE_MAPS_XY;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.WHERE_MAP_FEATURES_XY;
 
 public class Index {
     private static final Logger logger = LoggerFactory.getLogger(Index.class);
@@ -85,6 +110,8 @@ public class Index {
     public static final int BASEMAP_SIZE_STUB = 41;
     public static final String HILLSHADE_FILENAME = "hillshade.mbtiles";
 
+    private static final int REMOVAL_BATCH_SIZE = 2000;
+
     public enum ACTION {NONE, DOWNLOAD, CANCEL, REMOVE}
 
     private final Context mContext;
@@ -252,79 +279,64 @@ public class Index {
             progressListener.onProgressStarted(100);
         try {
             // remove tiles
-            SQLiteStatement statement = mMapsDatabase.compileStatement(SQL_REMOVE_TILES);
-            SQLiteStatement hillshadeStatement = mHillshadeDatabase.compileStatement(SQL_REMOVE_TILES);
-            for (int z = 8; z < 15; z++) {
-                int s = z - 7;
-                int cmin = x << s;
-                int cmax = ((x + 1) << s) - 1;
-                int rmin = y << s;
-                int rmax = ((y + 1) << s) - 1;
-                statement.clearBindings();
-                statement.bindLong(1, z);
-                statement.bindLong(2, cmin);
-                statement.bindLong(3, cmax);
-                statement.bindLong(4, rmin);
-                statement.bindLong(5, rmax);
-                statement.executeUpdateDelete();
-                if (hillshades && z < 13) {
-                    hillshadeStatement.clearBindings();
-                    hillshadeStatement.bindLong(1, z);
-                    hillshadeStatement.bindLong(2, cmin);
-                    hillshadeStatement.bindLong(3, cmax);
-                    hillshadeStatement.bindLong(4, rmin);
-                    hillshadeStatement.bindLong(5, rmax);
-                    hillshadeStatement.executeUpdateDelete();
-                }
-            }
+            removeTiles(mMapsDatabase, x, y, 14);
+            if (hillshades)
+                removeTiles(mHillshadeDatabase, x, y, 12);
+            File archive = TileArchive.getFile(new File(mMapsDatabase.getPath()).getParentFile(), x, y);
+            if (archive.exists() && !archive.delete())
+                logger.error("Failed to delete {}", archive.getName());
             if (progressListener != null)
                 progressListener.onProgressChanged(10);
             logger.error("  removed tiles");
-            // remove features
-            statement = mMapsDatabase.compileStatement(SQL_REMOVE_FEATURES);
-            statement.bindLong(1, x);
-            statement.bindLong(2, y);
-            statement.executeUpdateDelete();
-            if (progressListener != null)
-                progressListener.onProgressChanged(20);
-            logger.error("  removed features");
-            statement = mMapsDatabase.compileStatement(SQL_REMOVE_FEATURE_NAMES);
-            statement.executeUpdateDelete();
-            if (progressListener != null)
-                progressListener.onProgressChanged(40);
-            logger.error("  removed feature names");
-            // remove names
-            if (MapTrekDatabaseHelper.hasFullTextIndex(mMapsDatabase)) {
-                ArrayList<Long> ids = new ArrayList<>();
-                Cursor cursor = mMapsDatabase.rawQuery(SQL_SELECT_UNUSED_NAMES, null);
-                cursor.moveToFirst();
-                while (!cursor.isAfterLast()) {
-                    ids.add(cursor.getLong(0));
-                    cursor.moveToNext();
+            // remove features owned by area and their names in batches, each batch is committed
+            // separately so that interrupted removal leaves consistent database and can be repeated
+            String[] args = {String.valueOf(x), String.valueOf(y)};
+            long total = DatabaseUtils.queryNumEntries(mMapsDatabase, TABLE_MAP_FEATURES, WHERE_MAP_FEATURES_XY, args);
+            boolean hasFts = MapTrekDatabaseHelper.hasFullTextIndex(mMapsDatabase);
+            mMapsDatabase.execSQL(SQL_CREATE_ORPHAN_NAMES);
+            SQLiteStatement boundStatement = mMapsDatabase.compileStatement(SQL_SELECT_AREA_FEATURES_BOUND);
+            boundStatement.bindLong(1, x);
+            boundStatement.bindLong(2, y);
+            boundStatement.bindLong(4, REMOVAL_BATCH_SIZE - 1);
+            SQLiteStatement removeStatement = mMapsDatabase.compileStatement(SQL_REMOVE_AREA_MAP_FEATURES);
+            removeStatement.bindLong(1, x);
+            removeStatement.bindLong(2, y);
+            Object[] rangeArgs = {x, y, 0L, 0L};
+            long low = Long.MIN_VALUE;
+            long removed = 0L;
+            while (true) {
+                long high;
+                boundStatement.bindLong(3, low);
+                try {
+                    high = boundStatement.simpleQueryForLong();
+                } catch (SQLiteDoneException e) {
+                    // last batch
+                    high = Long.MAX_VALUE;
                 }
-                cursor.close();
-                if (ids.size() > 0) {
-                    StringBuilder sql = new StringBuilder();
-                    sql.append(SQL_REMOVE_NAMES_FTS);
-                    String sep = "";
-                    for (Long id : ids) {
-                        sql.append(sep);
-                        sql.append(String.valueOf(id));
-                        sep = ",";
-                    }
-                    sql.append(")");
-                    statement = mMapsDatabase.compileStatement(sql.toString());
-                    statement.executeUpdateDelete();
+                rangeArgs[2] = low;
+                rangeArgs[3] = high;
+                mMapsDatabase.beginTransaction();
+                try {
+                    mMapsDatabase.execSQL(SQL_COLLECT_OWNED_FEATURE_NAMES, rangeArgs);
+                    mMapsDatabase.execSQL(SQL_REMOVE_OWNED_FEATURE_NAMES, rangeArgs);
+                    mMapsDatabase.execSQL(SQL_REMOVE_OWNED_FEATURES, rangeArgs);
+                    removeStatement.bindLong(3, low);
+                    removeStatement.bindLong(4, high);
+                    removed += removeStatement.executeUpdateDelete();
+                    removeOrphanNames(mMapsDatabase, hasFts);
+                    mMapsDatabase.setTransactionSuccessful();
+                } finally {
+                    mMapsDatabase.endTransaction();
                 }
-                if (progressListener != null)
-                    progressListener.onProgressChanged(60);
-                logger.error("  removed names fts");
+                if (progressListener != null && total > 0L)
+                    progressListener.onProgressChanged((int) (10 + 90 * removed / total));
+                if (high == Long.MAX_VALUE)
+                    break;
+                low = high;
             }
-            statement = mMapsDatabase.compileStatement(SQL_REMOVE_NAMES);
-            statement.executeUpdateDelete();
-            if (progressListener != null)
-                progressListener.onProgressChanged(100);
-            logger.error("  removed names");
+            boundStatement.close();
+            removeStatement.close();
+            logger.error("  removed features and names");
             setDownloaded(x, y, (short) 0);
             setHillshadeDownloaded(x, y, (byte) 0);
             if (progressListener != null)
@@ -334,6 +346,36 @@ public class Index {
         }
     }
 
+    /**
+     * Removes tiles of specified map area from zoom level 8 up to specified maximum zoom level.
+     */
+    private static void removeTiles(SQLiteDatabase database, int x, int y, int maxZoom) {
+        removeTiles(database, SQL_REMOVE_TILES, x, y, maxZoom);
+    }
+
+    /**
+     * Executes tile removal statement for each zoom level of specified map area, statement is
+     * bound with zoom level and tile column and row ranges.
+     */
+    private static void removeTiles(SQLiteDatabase database, String sql, int x, int y, int maxZoom) {
+        SQLiteStatement statement = database.compileStatement(sql);
+        for (int z = 8; z <= maxZoom; z++) {
+            int s = z - 7;
+            int cmin = x << s;
+            int cmax = ((x + 1) << s) - 1;
+            int rmin = y << s;
+            int rmax = ((y + 1) << s) - 1;
+            statement.clearBindings();
+            statement.bindLong(1, z);
+            statement.bindLong(2, cmin);
+            statement.bindLong(3, cmax);
+            statement.bindLong(4, rmin);
+            statement.bindLong(5, rmax);
+            statement.executeUpdateDelete();
+        }
+        statement.close();
+    }
+
     public void setNativeMapStatus(int x, int y, short date, long size) {
         if (mMaps[x][y] == null)
             getNativeMap(x, y);
@@ -380,141 +422,123 @@ public class Index {
 
     public boolean processDownloadedMap(int x, int y, String filePath, @Nullable ProgressListener progressListener) {
         File mapFile = new File(filePath);
+        File archive = null;
+        File archiveFile = null;
+        SQLiteDatabase mapsDatabase = null;
+        boolean attached = false;
         try {
             logger.error("Importing from {}", mapFile.getName());
             SQLiteDatabase database = SQLiteDatabase.openDatabase(filePath, null, SQLiteDatabase.OPEN_READONLY);
 
-            int total = 0, progress = 0;
-            if (progressListener != null) {
-                total += DatabaseUtils.queryNumEntries(database, TABLE_NAMES);
-                total += DatabaseUtils.queryNumEntries(database, TABLE_FEATURES);
-                total += DatabaseUtils.queryNumEntries(database, TABLE_FEATURE_NAMES);
-                total += DatabaseUtils.queryNumEntries(database, TABLE_TILES);
-                progressListener.onProgressStarted(total);
-            }
+            long names = DatabaseUtils.queryNumEntries(database, TABLE_NAMES);
+            long features = DatabaseUtils.queryNumEntries(database, TABLE_FEATURES);
+            long featureNames = DatabaseUtils.queryNumEntries(database, TABLE_FEATURE_NAMES);
+            long tiles = DatabaseUtils.queryNumEntries(database, TABLE_TILES);
+            ImportProgress progress = new ImportProgress(progressListener, names + features + featureNames + tiles);
             boolean hasFts = MapTrekDatabaseHelper.hasFullTextIndex(mMapsDatabase);
 
-            // copy names
-            SQLiteStatement statement = mMapsDatabase.compileStatement("REPLACE INTO " + TABLE_NAMES + " VALUES (?,?)");
-            SQLiteStatement statementFts = null;
-            if (hasFts) {
-                statementFts = mMapsDatabase.compileStatement("INSERT INTO " + TABLE_NAMES_FTS
-                        + " (docid, " + COLUMN_NAMES_NAME + ") VALUES (?,?)");
-            }
-            mMapsDatabase.beginTransaction();
-            Cursor cursor = database.query(TABLE_NAMES, ALL_COLUMNS_NAMES, null, null, null, null, null);
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                statement.clearBindings();
-                statement.bindLong(1, cursor.getLong(0));
-                statement.bindString(2, cursor.getString(1));
-                statement.execute();
-                if (statementFts != null) {
-                    statementFts.clearBindings();
-                    statementFts.bindLong(1, cursor.getLong(0));
-                    statementFts.bindString(2, cursor.getString(1));
-                    statementFts.execute();
-                }
-                if (progressListener != null) {
-                    progress++;
-                    progressListener.onProgressChanged(progress);
-                }
-                cursor.moveToNext();
+            // base map (x = -1, y = -1) is not tracked in area index, its tiles are always
+            // stored in database because archives are read only for area zoom levels
+            boolean isArea = x >= 0 && y >= 0;
+            boolean archiveTiles = isArea && Configuration.getTileArchivesEnabled();
+            // installed area is updated in place, only changed rows are written
+            boolean update = isArea && mMaps[x][y] != null && mMaps[x][y].created > 0;
+            if (isArea) {
+                archive = TileArchive.getFile(new File(mMapsDatabase.getPath()).getParentFile(), x, y);
+                // archive is moved in place only when database transaction succeeds
+                archiveFile = new File(archive.getPath() + ".tmp");
             }
-            cursor.close();
-            mMapsDatabase.setTransactionSuccessful();
-            mMapsDatabase.endTransaction();
-            logger.error("  imported names");
-
-            // copy features
-            statement = mMapsDatabase.compileStatement("REPLACE INTO " + TABLE_FEATURES + " VALUES (?,?,?,?)");
-            SQLiteStatement extraStatement = mMapsDatabase.compileStatement("REPLACE INTO " + TABLE_MAP_FEATURES + " VALUES (?,?,?)");
-            extraStatement.bindLong(1, x);
-            extraStatement.bindLong(2, y);
-            mMapsDatabase.beginTransaction();
-            cursor = database.query(TABLE_FEATURES, ALL_COLUMNS_FEATURES, null, null, null, null, null);
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                statement.clearBindings();
-                statement.bindLong(1, cursor.getLong(0));
-                statement.bindLong(2, cursor.getInt(1));
-                statement.bindDouble(3, cursor.getDouble(2));
-                statement.bindDouble(4, cursor.getDouble(3));
-                statement.execute();
-                extraStatement.bindLong(3, cursor.getLong(0));
-                extraStatement.execute();
-                if (progressListener != null) {
-                    progress++;
-                    progressListener.onProgressChanged(progress);
-                }
-                cursor.moveToNext();
+            if (archiveTiles) {
+                TileArchive.write(archiveFile, database);
+                logger.error("  archived tiles");
             }
-            cursor.close();
-            mMapsDatabase.setTransactionSuccessful();
-            mMapsDatabase.endTransaction();
-            logger.error("  imported features");
-
-            // copy feature names
-            statement = mMapsDatabase.compileStatement("REPLACE INTO " + TABLE_FEATURE_NAMES + " VALUES (?,?,?)");
-            mMapsDatabase.beginTransaction();
-            cursor = database.query(TABLE_FEATURE_NAMES, ALL_COLUMNS_FEATURE_NAMES, null, null, null, null, null);
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                statement.clearBindings();
-                statement.bindLong(1, cursor.getLong(0));
-                statement.bindLong(2, cursor.getInt(1));
-                statement.bindLong(3, cursor.getLong(2));
-                statement.execute();
-                if (progressListener != null) {
-                    progress++;
-                    progressListener.onProgressChanged(progress);
-                }
-                cursor.moveToNext();
+
+            // import runs on its own connection: attaching a database disables write ahead
+            // logging of the connection pool, shared connection would also block map readers
+            // for the whole import transaction (journal mode is persistent and can not be
+            // changed by this connection while maps database is open, so it stays in WAL)
+            mapsDatabase = SQLiteDatabase.openDatabase(mMapsDatabase.getPath(), null,
+                    SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+
+            // database can not be attached inside transaction
+            try {
+                mapsDatabase.execSQL(SQL_ATTACH_IMPORT, new Object[]{filePath});
+                attached = true;
+            } catch (SQLiteException e) {
+                logger.error("Failed to attach downloaded map, copying row by row", e);
             }
-            cursor.close();
-            mMapsDatabase.setTransactionSuccessful();
-            mMapsDatabase.endTransaction();
-            logger.error("  imported feature names");
 
-            // copy tiles
-            statement = mMapsDatabase.compileStatement("REPLACE INTO " + TABLE_TILES + " VALUES (?,?,?,?)");
-            mMapsDatabase.beginTransaction();
-            cursor = database.query(TABLE_TILES, ALL_COLUMNS_TILES, null, null, null, null, null);
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                statement.clearBindings();
-                statement.bindLong(1, cursor.getInt(0));
-                statement.bindLong(2, cursor.getInt(1));
-                statement.bindLong(3, cursor.getInt(2));
-                statement.bindBlob(4, cursor.getBlob(3));
-                statement.execute();
-                if (progressListener != null) {
-                    progress++;
-                    progressListener.onProgressChanged(progress);
+            // import everything in one transaction so that map is either fully updated or intact
+            mapsDatabase.beginTransaction();
+            if (attached && update) {
+                if (hasFts)
+                    mapsDatabase.execSQL(SQL_IMPORT_NAMES_FTS_PENDING);
+                updateAttachedMap(mapsDatabase, x, y, hasFts, !archiveTiles);
+                progress.advance(names + features + featureNames);
+            } else if (attached) {
+                // let SQLite copy tables natively without passing rows through Java
+                // names are added to full text index later, see updateFullTextIndex()
+                if (hasFts)
+                    mapsDatabase.execSQL(SQL_IMPORT_NAMES_FTS_PENDING);
+                mapsDatabase.execSQL(SQL_IMPORT_NAMES);
+                progress.advance(names);
+                logger.error("  imported names");
+                mapsDatabase.execSQL(SQL_IMPORT_FEATURES);
+                mapsDatabase.execSQL(SQL_IMPORT_MAP_FEATURES, new Object[]{x, y});
+                progress.advance(features);
+                logger.error("  imported features");
+                mapsDatabase.execSQL(SQL_IMPORT_FEATURE_NAMES);
+                progress.advance(featureNames);
+                logger.error("  imported feature names");
+                if (!archiveTiles) {
+                    mapsDatabase.execSQL(SQL_IMPORT_TILES);
+                    logger.error("  imported tiles");
                 }
-                cursor.moveToNext();
+            } else {
+                copyNames(mapsDatabase, database, hasFts, progress);
+                copyFeatures(mapsDatabase, database, x, y, progress);
+                copyFeatureNames(mapsDatabase, database, progress);
+                if (!archiveTiles)
+                    copyTiles(mapsDatabase, database, progress);
+            }
+            if (archiveTiles || attached)
+                progress.advance(tiles);
+            if (archiveTiles) {
+                // tiles of previous map version are not needed anymore
+                removeTiles(mapsDatabase, x, y, 14);
+            }
+            mapsDatabase.setTransactionSuccessful();
+            mapsDatabase.endTransaction();
+
+            if (archiveTiles) {
+                if (!archiveFile.renameTo(archive))
+                    throw new IOException("Failed to create " + archive.getName());
+            } else if (archive != null && archive.exists() && !archive.delete()) {
+                logger.error("Failed to delete {}", archive.getName());
             }
-            cursor.close();
-            mMapsDatabase.setTransactionSuccessful();
-            mMapsDatabase.endTransaction();
-            logger.error("  imported tiles");
 
             short date = 0;
-            cursor = database.query(TABLE_INFO, new String[]{COLUMN_INFO_VALUE}, WHERE_INFO_NAME, new String[]{"timestamp"}, null, null, null);
+            Cursor cursor = database.query(TABLE_INFO, new String[]{COLUMN_INFO_VALUE}, WHERE_INFO_NAME, new String[]{"timestamp"}, null, null, null);
             if (cursor.moveToFirst()) {
                 date = Short.valueOf(cursor.getString(0));
             }
             cursor.close();
             database.close();
             setDownloaded(x, y, date);
-        } catch (SQLiteException e) {
+        } catch (SQLiteException | IOException e) {
             MapTrek.getApplication().registerException(e);
             logger.error("Import failed", e);
             setDownloading(x, y, 0L, 0L);
             return false;
         } finally {
-            if (mMapsDatabase.inTransaction())
-                mMapsDatabase.endTransaction();
+            if (mapsDatabase != null) {
+                if (mapsDatabase.inTransaction())
+                    mapsDatabase.endTransaction();
+                // downloaded map is detached when connection is closed
+                mapsDatabase.close();
+            }
+            if (archiveFile != null && archiveFile.exists() && !archiveFile.delete())
+                logger.error("Failed to delete {}", archiveFile.getName());
             if (progressListener != null)
                 progressListener.onProgressFinished();
             //noinspection ResultOfMethodCallIgnored
@@ -523,6 +547,136 @@ public class Index {
         return true;
     }
 
+    /**
+     * Updates installed map area from attached downloaded map. Rows that are equal in both
+     * databases are not touched, features and names that are not used anymore are removed.
+     */
+    private void updateAttachedMap(SQLiteDatabase mapsDatabase, int x, int y, boolean hasFts, boolean updateTiles) {
+        Object[] xy = new Object[]{x, y};
+        mapsDatabase.execSQL(SQL_UPDATE_NAMES);
+        logger.error("  updated names");
+        mapsDatabase.execSQL(SQL_CREATE_ORPHAN_NAMES);
+        mapsDatabase.execSQL(SQL_COLLECT_STALE_FEATURE_NAMES, xy);
+        mapsDatabase.execSQL(SQL_REMOVE_STALE_FEATURE_NAMES, xy);
+        mapsDatabase.execSQL(SQL_REMOVE_STALE_FEATURES, xy);
+        mapsDatabase.execSQL(SQL_REMOVE_STALE_MAP_FEATURES, xy);
+        mapsDatabase.execSQL(SQL_UPDATE_FEATURES);
+        mapsDatabase.execSQL(SQL_UPDATE_MAP_FEATURES, xy);
+        logger.error("  updated features");
+        mapsDatabase.execSQL(SQL_COLLECT_CHANGED_FEATURE_NAMES);
+        mapsDatabase.execSQL(SQL_REMOVE_CHANGED_FEATURE_NAMES);
+        mapsDatabase.execSQL(SQL_UPDATE_FEATURE_NAMES);
+        logger.error("  updated feature names");
+        if (updateTiles) {
+            removeTiles(mapsDatabase, SQL_REMOVE_STALE_TILES, x, y, 14);
+            mapsDatabase.execSQL(SQL_UPDATE_TILES);
+            logger.error("  updated tiles");
+        }
+        removeOrphanNames(mapsDatabase, hasFts);
+        logger.error("  removed orphan names");
+    }
+
+    /**
+     * Removes collected names that are not referenced by features anymore.
+     */
+    private void removeOrphanNames(SQLiteDatabase mapsDatabase, boolean hasFts) {
+        if (hasFts)
+            mapsDatabase.execSQL(SQL_REMOVE_ORPHAN_NAMES_FTS);
+        mapsDatabase.execSQL(SQL_REMOVE_ORPHAN_NAMES_FTS_PENDING);
+        mapsDatabase.execSQL(SQL_REMOVE_ORPHAN_NAMES);
+        mapsDatabase.execSQL(SQL_CLEAR_ORPHAN_NAMES);
+    }
+
+    private void copyNames(SQLiteDatabase mapsDatabase, SQLiteDatabase database, boolean hasFts, ImportProgress progress) {
+        SQLiteStatement statement = mapsDatabase.compileStatement("REPLACE INTO " + TABLE_NAMES + " VALUES (?,?)");
+        SQLiteStatement statementFts = null;
+        if (hasFts)
+            statementFts = mapsDatabase.compileStatement(SQL_INSERT_NAME_FTS_PENDING);
+        Cursor cursor = database.query(TABLE_NAMES, ALL_COLUMNS_NAMES, null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            if (statementFts != null) {
+                statementFts.bindLong(1, cursor.getLong(0));
+                statementFts.bindLong(2, cursor.getLong(0));
+                statementFts.execute();
+            }
+            statement.bindLong(1, cursor.getLong(0));
+            statement.bindString(2, cursor.getString(1));
+            statement.execute();
+            progress.advance(1);
+        }
+        cursor.close();
+        statement.close();
+        if (statementFts != null)
+            statementFts.close();
+        logger.error("  imported names");
+    }
+
+    private void copyFeatures(SQLiteDatabase mapsDatabase, SQLiteDatabase database, int x, int y, ImportProgress progress) {
+        SQLiteStatement statement = mapsDatabase.compileStatement("REPLACE INTO " + TABLE_FEATURES + " VALUES (?,?,?,?)");
+        SQLiteStatement extraStatement = mapsDatabase.compileStatement("REPLACE INTO " + TABLE_MAP_FEATURES + " VALUES (?,?,?)");
+        extraStatement.bindLong(1, x);
+        extraStatement.bindLong(2, y);
+        Cursor cursor = database.query(TABLE_FEATURES, ALL_COLUMNS_FEATURES, null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            statement.bindLong(1, cursor.getLong(0));
+            statement.bindLong(2, cursor.getInt(1));
+            statement.bindDouble(3, cursor.getDouble(2));
+            statement.bindDouble(4, cursor.getDouble(3));
+            statement.execute();
+            extraStatement.bindLong(3, cursor.getLong(0));
+            extraStatement.execute();
+            progress.advance(1);
+        }
+        cursor.close();
+        statement.close();
+        extraStatement.close();
+        logger.error("  imported features");
+    }
+
+    private void copyFeatureNames(SQLiteDatabase mapsDatabase, SQLiteDatabase database, ImportProgress progress) {
+        SQLiteStatement statement = mapsDatabase.compileStatement("REPLACE INTO " + TABLE_FEATURE_NAMES + " VALUES (?,?,?)");
+        Cursor cursor = database.query(TABLE_FEATURE_NAMES, ALL_COLUMNS_FEATURE_NAMES, null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            statement.bindLong(1, cursor.getLong(0));
+            statement.bindLong(2, cursor.getInt(1));
+            statement.bindLong(3, cursor.getLong(2));
+            statement.execute();
+            progress.advance(1);
+        }
+        cursor.close();
+        statement.close();
+        logger.error("  imported feature names");
+    }
+
+    private void copyTiles(SQLiteDatabase mapsDatabase, SQLiteDatabase database, ImportProgress progress) {
+        SQLiteStatement statement = mapsDatabase.compileStatement("REPLACE INTO " + TABLE_TILES + " VALUES (?,?,?,?)");
+        Cursor cursor = database.query(TABLE_TILES, ALL_COLUMNS_TILES, null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            statement.bindLong(1, cursor.getInt(0));
+            statement.bindLong(2, cursor.getInt(1));
+            statement.bindLong(3, cursor.getInt(2));
+            statement.bindBlob(4, cursor.getBlob(3));
+            statement.execute();
+            progress.advance(1);
+        }
+        cursor.close();
+        statement.close();
+        logger.error("  imported tiles");
+    }
+
+    /**
+     * Adds names of imported maps to full text search index. Should be called after map import,
+     * imported map is available before its names are indexed.
+     */
+    public void updateFullTextIndex(@Nullable ProgressListener progressListener) {
+        try {
+            if (MapTrekDatabaseHelper.hasFullTextIndex(mMapsDatabase))
+                MapTrekDatabaseHelper.updateFtsTable(mMapsDatabase, progressListener);
+        } catch (SQLiteException e) {
+            logger.error("Failed to update full text index", e);
+        }
+    }
+
     public boolean processDownloadedHillshade(int x, int y, String filePath, @Nullable ProgressListener progressListener) {
         File mapFile = new File(filePath);
         try {
@@ -576,6 +730,8 @@ public class Index {
         } finally {
             if (mHillshadeDatabase.inTransaction())
                 mHillshadeDatabase.endTransaction();
+            if (archiveFile != null && archiveFile.exists() && !archiveFile.delete())
+                logger.error("Failed to delete {}", archiveFile.getName());
             if (progressListener != null)
                 progressListener.onProgressFinished();
             //noinspection ResultOfMethodCallIgnored
@@ -824,6 +980,31 @@ public class Index {
         return mLoadedMaps;
     }
 
+    /**
+     * Reports import progress to listener no more often than each percent of total.
+     */
+    private static class ImportProgress {
+        private final ProgressListener mListener;
+        private final long mStep;
+        private long mProgress;
+        private long mReported;
+
+        ImportProgress(@Nullable ProgressListener listener, long total) {
+            mListener = listener;
+            mStep = Math.max(1L, total / 100);
+            if (mListener != null)
+                mListener.onProgressStarted((int) total);
+        }
+
+        void advance(long count) {
+            mProgress += count;
+            if (mListener != null && mProgress - mReported >= mStep) {
+                mReported = mProgress;
+                mListener.onProgressChanged((int) mProgress);
+            }
+        }
+    }
+
     @SuppressWarnings("WeakerAccess")
     public static class MapStatus {
         public short created = 0;
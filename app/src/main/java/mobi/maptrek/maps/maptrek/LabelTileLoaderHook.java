@@ -32,6 +32,8 @@ package mobi.maptrek.maps.maptrek;
  * this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import android.util.LongSparseArray;
+
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.MapElement;
 import org.oscim.core.PointF;
@@ -47,10 +49,14 @@ import org.oscim.renderer.bucket.TextItem;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.theme.styles.SymbolStyle;
 import org.oscim.theme.styles.TextStyle;
+import org.oscim.tiling.TileKey;
 import org.oscim.utils.geom.PolyLabel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import mobi.maptrek.util.OsmcSymbolFactory;
 import mobi.maptrek.util.ShieldFactory;
 import mobi.maptrek.util.StringFormatter;
@@ -64,11 +70,20 @@ public class LabelTileLoaderHook implements VectorTileLayer.TileLoaderThemeHook
     private static final Logger logger = LoggerFactory.getLogger(LabelTileLoaderHook.class);
 
     private static final String LABEL_DATA = LabelLayer.class.getName();
+    private static final int LABEL_CACHE_SIZE = 128; // tiles
 
     private final ShieldFactory mShieldFactory;
     private final OsmcSymbolFactory mOsmcSymbolFactory;
     private final SymbolStyle.SymbolBuilder<?> mSymbolBuilder = SymbolStyle.builder();
 
+    // area label geometry does not depend on theme and language so it is kept for reloaded tiles
+    private final Map<Long, LongSparseArray<LabelGeometry>> mLabelCache = new LinkedHashMap<Long, LongSparseArray<LabelGeometry>>(LABEL_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, LongSparseArray<LabelGeometry>> eldest) {
+            return size() > LABEL_CACHE_SIZE;
+        }
+    };
+
     private int mLang = 0;
 
     public LabelTileLoaderHook(ShieldFactory shieldFactory, OsmcSymbolFactory osmcSymbolFactory) {
@@ -122,8 +137,12 @@ public class LabelTileLoaderHook implements VectorTileLayer.TileLoaderThemeHook
                 if (label != null && (label.x < 0 || label.x > Tile.SIZE || label.y < 0 || label.y > Tile.SIZE))
                     return false;
 
+                long id = getElementId(element);
+                long key = TileKey.getKey(tile.zoomLevel, tile.tileX, tile.tileY);
+                int hash = id != 0L ? getGeometryHash(element) : 0;
+
                 if (text.areaSize > 0f) {
-                    float area = element.area();
+                    float area = getArea(key, id, hash, element);
                     float ratio = area / (Tile.SIZE * Tile.SIZE); // we can't use static as it's recalculated based on dpi
                     if (ratio < text.areaSize)
                         return false;
@@ -134,7 +153,7 @@ public class LabelTileLoaderHook implements VectorTileLayer.TileLoaderThemeHook
                     return false;
 
                 if (label == null)
-                    label = PolyLabel.get(element);
+                    label = getLabelPosition(key, id, hash, element);
 
                 ld.labels.push(TextItem.pool.get().set(label.x, label.y, value, text));
             } else if (element.type == POINT) {
@@ -212,6 +231,107 @@ public class LabelTileLoaderHook implements VectorTileLayer.TileLoaderThemeHook
     public void complete(MapTile tile, boolean success) {
     }
 
+    /**
+     * Returns element id or zero if element can not be identified and its label geometry can
+     * not be cached.
+     */
+    private static long getElementId(MapElement element) {
+        if (!(element instanceof ExtendedMapElement))
+            return 0L;
+        return ((ExtendedMapElement) element).id;
+    }
+
+    /**
+     * Returns cheap hash of element geometry: number of points and coordinates of
+     * first, middle and last points. It is used to detect changed geometry of the same element.
+     */
+    private static int getGeometryHash(MapElement element) {
+        int numPoints = element.getNumPoints();
+        int hash = numPoints;
+        if (numPoints > 0) {
+            float[] points = element.points;
+            int last = (numPoints - 1) << 1;
+            int middle = (numPoints >> 1) << 1;
+            hash = 31 * hash + Float.floatToIntBits(points[0]);
+            hash = 31 * hash + Float.floatToIntBits(points[1]);
+            hash = 31 * hash + Float.floatToIntBits(points[middle]);
+            hash = 31 * hash + Float.floatToIntBits(points[middle + 1]);
+            hash = 31 * hash + Float.floatToIntBits(points[last]);
+            hash = 31 * hash + Float.floatToIntBits(points[last + 1]);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns cached label geometry of element in specified tile or null if it is not cached
+     * or element geometry has changed. Tile key includes zoom level, so geometry is never
+     * shared between different tiles.
+     */
+    private LabelGeometry getLabelGeometry(long key, long id, int hash) {
+        synchronized (mLabelCache) {
+            LongSparseArray<LabelGeometry> tileGeometry = mLabelCache.get(key);
+            if (tileGeometry == null)
+                return null;
+            LabelGeometry geometry = tileGeometry.get(id);
+            if (geometry == null || geometry.hash != hash)
+                return null;
+            return geometry;
+        }
+    }
+
+    /**
+     * Caches calculated area or label position of element, merging it with previously
+     * cached value for the same geometry.
+     */
+    private void putLabelGeometry(long key, long id, int hash, float area, PointF label) {
+        synchronized (mLabelCache) {
+            LongSparseArray<LabelGeometry> tileGeometry = mLabelCache.get(key);
+            if (tileGeometry == null) {
+                tileGeometry = new LongSparseArray<>();
+                mLabelCache.put(key, tileGeometry);
+            }
+            LabelGeometry geometry = tileGeometry.get(id);
+            if (geometry != null && geometry.hash == hash) {
+                if (area < 0f)
+                    area = geometry.area;
+                if (label == null)
+                    label = geometry.label;
+            }
+            tileGeometry.put(id, new LabelGeometry(hash, area, label));
+        }
+    }
+
+    private float getArea(long key, long id, int hash, MapElement element) {
+        if (id == 0L)
+            return element.area();
+        LabelGeometry geometry = getLabelGeometry(key, id, hash);
+        if (geometry != null && geometry.area >= 0f)
+            return geometry.area;
+        float area = element.area();
+        putLabelGeometry(key, id, hash, area, null);
+        return area;
+    }
+
+    private PointF getLabelPosition(long key, long id, int hash, MapElement element) {
+        if (id == 0L)
+            return PolyLabel.get(element);
+        LabelGeometry geometry = getLabelGeometry(key, id, hash);
+        if (geometry != null && geometry.label != null)
+            return geometry.label;
+        PointF label = PolyLabel.get(element);
+        putLabelGeometry(key, id, hash, -1f, label);
+        return label;
+    }
+
+    /**
+     * Clears cached label geometry, should be called when map data changes.
+     */
+    public void clearCache() {
+        synchronized (mLabelCache) {
+            mLabelCache.clear();
+        }
+    }
+
     private String getTextValue(MapElement element, String key) {
         if ("name".equals(key) && element instanceof ExtendedMapElement) {
             ExtendedMapElement extendedElement = (ExtendedMapElement) element;
@@ -241,4 +361,20 @@ public class LabelTileLoaderHook implements VectorTileLayer.TileLoaderThemeHook
     public void setPreferredLanguage(String preferredLanguage) {
         mLang = MapTrekDatabaseHelper.getLanguageId(preferredLanguage);
     }
+
+    /**
+     * Immutable label geometry of element, negative area or null label mean that value
+     * is not calculated yet. Label position should not be modified.
+     */
+    private static class LabelGeometry {
+        final int hash;
+        final float area;
+        final PointF label;
+
+        LabelGeometry(int hash, float area, PointF label) {
+            this.hash = hash;
+            this.area = area;
+            this.label = label;
+        }
+    }
 }
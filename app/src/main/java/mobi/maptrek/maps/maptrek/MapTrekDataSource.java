@@ -18,25 +18,31 @@ package mobi.maptrek.maps.maptrek;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.Nullable;
+import android.util.LongSparseArray;
 
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.GeometryBuffer;
 import org.oscim.core.MapElement;
-import org.oscim.core.Tag;
 import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileKey;
+import org.oscim.tiling.source.BlobInputStream;
 import org.oscim.utils.geom.TileClipper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_TILES_COLUMN;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_TILES_DATA;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_TILES_ROW;
 import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_TILES;
-import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.WHERE_TILE_ZXY;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.WHERE_TILE_RANGE;
 import static org.oscim.tiling.QueryResult.FAILED;
 import static org.oscim.tiling.QueryResult.SUCCESS;
 import static org.oscim.tiling.QueryResult.TILE_NOT_FOUND;
@@ -45,21 +51,51 @@ import static org.oscim.tiling.QueryResult.TILE_NOT_FOUND;
 class MapTrekDataSource implements ITileDataSource {
     private static final Logger logger = LoggerFactory.getLogger(MapTrekDataSource.class);
 
-    private static final String SQL_GET_TILE = "SELECT " + COLUMN_TILES_DATA + " FROM " + TABLE_TILES + " WHERE " + WHERE_TILE_ZXY;
+    private static final String SQL_GET_TILES = "SELECT " + COLUMN_TILES_COLUMN + ", " + COLUMN_TILES_ROW + ", "
+            + COLUMN_TILES_DATA + " FROM " + TABLE_TILES + " WHERE " + WHERE_TILE_RANGE;
 
     private static final int MAX_NATIVE_ZOOM = 14;
+    // zoom level of native map areas
+    private static final int MAX_AREA_ZOOM = 7;
+    // tiles are fetched in aligned blocks of 2x2 as neighbours are most probably visible too
+    private static final int FETCH_BLOCK_MASK = 0x1;
+    // overzoomed tiles are split from native tile in aligned blocks of up to 4x4
+    private static final int SPLIT_BLOCK_SIZE = 4;
     private static final int CLIP_BUFFER = 32;
     private static final int BUILDING_CLIP_BUFFER = 4;
-
-    private static final Tag TAG_TREE = new Tag("natural", "tree");
+    private static final float TREE_RADIUS = 1.1f;
+    // tree circle outline around origin, shifted to tree position when tree is converted
+    private static final float[] TREE_CIRCLE = GeometryBuffer.makeCircle(0f, 0f, TREE_RADIUS, 10).points;
 
     private final MapTrekTileDecoder mTileDecoder;
     private final SQLiteDatabase mDatabase;
+    private final DecodedTileCache mTileCache;
+    private final TileArchives mTileArchives;
+    private final FeatureNameCache mNameCache;
+    private final DecodedTileDataSink mDecodedTileDataSink;
+    private final NativeTileDataSink mNativeTileDataSink;
+    private final TileClipper mTileClipper;
+    private final BlobInputStream mBlobInputStream;
+    private final ExtendedMapElement mElement;
+    // ids of elements of currently processed tile, their names are resolved in one batch
+    // and kept locally for the tile instead of going through shared name cache
+    private long[] mTileIds = new long[256];
+    private int mTileIdCount;
+    private int mTileNamesLang;
+    private final LongSparseArray<String> mTileNames = new LongSparseArray<>(256);
     private boolean mContoursEnabled = true;
 
-    MapTrekDataSource(SQLiteDatabase database) {
+    MapTrekDataSource(SQLiteDatabase database, DecodedTileCache tileCache, TileArchives tileArchives, FeatureNameCache nameCache) {
         mDatabase = database;
+        mTileCache = tileCache;
+        mTileArchives = tileArchives;
+        mNameCache = nameCache;
         mTileDecoder = new MapTrekTileDecoder();
+        mDecodedTileDataSink = new DecodedTileDataSink();
+        mNativeTileDataSink = new NativeTileDataSink();
+        mTileClipper = new TileClipper(0f, 0f, 0f, 0f);
+        mBlobInputStream = new BlobInputStream();
+        mElement = new ExtendedMapElement();
     }
 
     @Override
@@ -73,23 +109,282 @@ class MapTrekDataSource implements ITileDataSource {
             y = y >> dz;
             z = MAX_NATIVE_ZOOM;
         }
-        String[] args = {String.valueOf(z), String.valueOf(x), String.valueOf(y)};
         QueryResult result = tile.zoomLevel > 7 ? TILE_NOT_FOUND : SUCCESS;
-        try (Cursor c = mDatabase.rawQuery(SQL_GET_TILE, args)) {
-            if (c.moveToFirst()) {
-                byte[] bytes = c.getBlob(0);
-                NativeTileDataSink proxyDataSink = new NativeTileDataSink(sink, tile, dz, x, y);
-                boolean ok = mTileDecoder.decode(tile, proxyDataSink, new ByteArrayInputStream(bytes));
-                result = ok ? SUCCESS : FAILED;
+        try {
+            long key = TileKey.getKey(z, x, y);
+            ExtendedMapElement[] elements = mTileCache.get(key);
+            if (elements == null) {
+                int minX = x & ~FETCH_BLOCK_MASK;
+                int minY = y & ~FETCH_BLOCK_MASK;
+                elements = fetchTiles(z, minX, minY, minX | FETCH_BLOCK_MASK, minY | FETCH_BLOCK_MASK, key);
+            }
+            if (elements == DecodedTileCache.EMPTY_TILE)
+                elements = null;
+            if (elements != null && dz > 0) {
+                long childKey = TileKey.getKey(tile.zoomLevel, tile.tileX, tile.tileY);
+                ExtendedMapElement[] childElements = mTileCache.get(childKey);
+                if (childElements == null)
+                    childElements = splitTile(tile.zoomLevel, tile.tileX, tile.tileY, x, y, elements);
+                elements = childElements;
+            }
+            if (elements != null) {
+                setTileIds(elements);
+                mNativeTileDataSink.set(sink, tile);
+                for (ExtendedMapElement element : elements) {
+                    // elements are modified by data sink so they are passed to it as a copy
+                    mElement.set(element);
+                    mNativeTileDataSink.process(mElement);
+                }
+                mNativeTileDataSink.set(null, null);
+                result = SUCCESS;
             }
         } catch (Exception e) {
             logger.error("Query error", e);
             result = FAILED;
         } finally {
+            mTileIdCount = 0;
             sink.completed(result);
         }
     }
 
+    /**
+     * Clips, scales and translates elements of native tile into overzoomed tiles. Tiles are
+     * produced in aligned block containing requested tile, each element is clipped only to
+     * those tiles of the block that its bounding box intersects. Produced tiles are cached.
+     *
+     * @return elements of requested tile
+     */
+    private ExtendedMapElement[] splitTile(int zoom, int tileX, int tileY, int x, int y, ExtendedMapElement[] elements) {
+        int dz = zoom - MAX_NATIVE_ZOOM;
+        int scale = 1 << dz;
+        int size = Math.min(scale, SPLIT_BLOCK_SIZE);
+        int minX = tileX & ~(size - 1);
+        int minY = tileY & ~(size - 1);
+        boolean convertTrees = zoom > 15;
+
+        ArrayList<ArrayList<ExtendedMapElement>> children = new ArrayList<>(size * size);
+        for (int i = 0; i < size * size; i++)
+            children.add(new ArrayList<ExtendedMapElement>());
+
+        for (ExtendedMapElement element : elements) {
+            boolean isTree = convertTrees && element.type == GeometryBuffer.GeometryType.POINT
+                    && element.hasFlag(ExtendedMapElement.FLAG_TREE);
+            float buffer = element.isSeparateBuildingPart() ? BUILDING_CLIP_BUFFER : CLIP_BUFFER;
+            // bounding box of element in native tile coordinates, meshes are not clipped
+            float bMinX = -Float.MAX_VALUE, bMinY = -Float.MAX_VALUE;
+            float bMaxX = Float.MAX_VALUE, bMaxY = Float.MAX_VALUE;
+            if (element.type != GeometryBuffer.GeometryType.TRIS) {
+                bMinX = bMinY = Float.MAX_VALUE;
+                bMaxX = bMaxY = -Float.MAX_VALUE;
+                for (int i = 0, n = element.pointPos; i < n; i += 2) {
+                    float px = element.points[i];
+                    float py = element.points[i + 1];
+                    if (px < bMinX) bMinX = px;
+                    if (px > bMaxX) bMaxX = px;
+                    if (py < bMinY) bMinY = py;
+                    if (py > bMaxY) bMaxY = py;
+                }
+                if (isTree) {
+                    bMinX -= TREE_RADIUS;
+                    bMinY -= TREE_RADIUS;
+                    bMaxX += TREE_RADIUS;
+                    bMaxY += TREE_RADIUS;
+                }
+            }
+            for (int cx = 0; cx < size; cx++) {
+                int dx = (minX + cx - (x << dz)) * Tile.SIZE;
+                float xmin = (dx - buffer) / scale;
+                float xmax = (dx + Tile.SIZE + buffer) / scale;
+                if (bMaxX < xmin || bMinX > xmax)
+                    continue;
+                for (int cy = 0; cy < size; cy++) {
+                    int dy = (minY + cy - (y << dz)) * Tile.SIZE;
+                    float ymin = (dy - buffer) / scale;
+                    float ymax = (dy + Tile.SIZE + buffer) / scale;
+                    if (bMaxY < ymin || bMinY > ymax)
+                        continue;
+                    mElement.set(element);
+                    if (isTree)
+                        convertTree(mElement);
+                    mTileClipper.setRect(xmin, ymin, xmax, ymax);
+                    if (!mTileClipper.clip(mElement))
+                        continue;
+                    mElement.scale(scale, scale);
+                    mElement.translate(-dx, -dy);
+                    if (mElement.hasLabelPosition && mElement.labelPosition != null) {
+                        mElement.labelPosition.x = mElement.labelPosition.x * scale - dx;
+                        mElement.labelPosition.y = mElement.labelPosition.y * scale - dy;
+                        if (mElement.labelPosition.x < 0 || mElement.labelPosition.x > Tile.SIZE
+                                || mElement.labelPosition.y < 0 || mElement.labelPosition.y > Tile.SIZE)
+                            mElement.labelPosition = null;
+                    }
+                    children.get(cx * size + cy).add(new ExtendedMapElement(mElement));
+                }
+            }
+        }
+
+        ExtendedMapElement[] result = null;
+        for (int cx = 0; cx < size; cx++) {
+            for (int cy = 0; cy < size; cy++) {
+                ArrayList<ExtendedMapElement> list = children.get(cx * size + cy);
+                ExtendedMapElement[] childElements = list.toArray(new ExtendedMapElement[list.size()]);
+                mTileCache.put(TileKey.getKey(zoom, minX + cx, minY + cy), childElements);
+                if (minX + cx == tileX && minY + cy == tileY)
+                    result = childElements;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts tree point to polygon.
+     */
+    private static void convertTree(ExtendedMapElement element) {
+        float x = element.getPointX(0);
+        float y = element.getPointY(0);
+        element.ensurePointSize(TREE_CIRCLE.length >> 1, false);
+        for (int i = 0; i < TREE_CIRCLE.length; i += 2) {
+            element.points[i] = TREE_CIRCLE[i] + x;
+            element.points[i + 1] = TREE_CIRCLE[i + 1] + y;
+        }
+        element.pointPos = TREE_CIRCLE.length;
+        element.type = GeometryBuffer.GeometryType.POLY;
+        element.index[0] = TREE_CIRCLE.length;
+        if (element.index.length > 1)
+            element.index[1] = -1;
+    }
+
+    /**
+     * Reads, decodes and caches all present tiles in specified range. Tiles of zoom levels above
+     * maximum native zoom are mapped to corresponding native tiles.
+     */
+    void fetchTiles(int zoom, int minX, int minY, int maxX, int maxY) {
+        if (zoom > MAX_NATIVE_ZOOM) {
+            int dz = zoom - MAX_NATIVE_ZOOM;
+            minX = minX >> dz;
+            minY = minY >> dz;
+            maxX = maxX >> dz;
+            maxY = maxY >> dz;
+            zoom = MAX_NATIVE_ZOOM;
+        }
+        try {
+            if (zoom > MAX_AREA_ZOOM) {
+                // split range by map areas as they can be stored differently
+                int dz = zoom - MAX_AREA_ZOOM;
+                for (int ax = minX >> dz; ax <= maxX >> dz; ax++)
+                    for (int ay = minY >> dz; ay <= maxY >> dz; ay++)
+                        fetchTiles(zoom, Math.max(minX, ax << dz), Math.max(minY, ay << dz),
+                                Math.min(maxX, ((ax + 1) << dz) - 1), Math.min(maxY, ((ay + 1) << dz) - 1), -1L);
+            } else {
+                fetchTiles(zoom, minX, minY, maxX, maxY, -1L);
+            }
+        } catch (Exception e) {
+            logger.error("Query error", e);
+        }
+    }
+
+    /**
+     * Reads all tiles in specified range, decodes and caches those that are not cached yet.
+     * Range should not span several map areas. Tiles are read from area archive if it exists
+     * or with single database query otherwise. Tiles absent from map are cached as empty so
+     * that they are not queried again.
+     *
+     * @param key cache key of requested tile
+     * @return elements of requested tile or null if it was not found
+     * @throws IOException if requested tile failed to decode
+     */
+    @Nullable
+    private ExtendedMapElement[] fetchTiles(int z, int minX, int minY, int maxX, int maxY, long key) throws IOException {
+        ExtendedMapElement[] result = null;
+        int width = maxX - minX + 1;
+        long found = 0L; // bit mask of tiles present in map, used only for small ranges
+        if (z > MAX_AREA_ZOOM) {
+            int dz = z - MAX_AREA_ZOOM;
+            TileArchive archive = mTileArchives.get(minX >> dz, minY >> dz);
+            if (archive != null) {
+                for (int x = minX; x <= maxX; x++)
+                    for (int y = minY; y <= maxY; y++) {
+                        long tileKey = TileKey.getKey(z, x, y);
+                        long bit = 1L << ((y - minY) * width + x - minX);
+                        if (tileKey != key && mTileCache.get(tileKey) != null) {
+                            // cached tile is either present or already marked as empty
+                            found |= bit;
+                            continue;
+                        }
+                        if (!archive.read(tileKey, mBlobInputStream))
+                            continue;
+                        found |= bit;
+                        ExtendedMapElement[] elements = decodeTile(z, x, y, tileKey);
+                        if (tileKey == key) {
+                            if (elements == null)
+                                throw new IOException("Failed to decode requested tile");
+                            result = elements;
+                        }
+                    }
+                cacheMissingTiles(z, minX, minY, maxX, maxY, found);
+                return result;
+            }
+        }
+        String[] args = {String.valueOf(z), String.valueOf(minX), String.valueOf(maxX), String.valueOf(minY), String.valueOf(maxY)};
+        try (Cursor c = mDatabase.rawQuery(SQL_GET_TILES, args)) {
+            if (c.moveToFirst())
+                do {
+                    int x = c.getInt(0);
+                    int y = c.getInt(1);
+                    long tileKey = TileKey.getKey(z, x, y);
+                    found |= 1L << ((y - minY) * width + x - minX);
+                    if (tileKey != key && mTileCache.get(tileKey) != null)
+                        continue;
+                    mBlobInputStream.set(c.getBlob(2));
+                    ExtendedMapElement[] elements = decodeTile(z, x, y, tileKey);
+                    if (tileKey == key) {
+                        if (elements == null)
+                            throw new IOException("Failed to decode requested tile");
+                        result = elements;
+                    }
+                } while (c.moveToNext());
+        }
+        cacheMissingTiles(z, minX, minY, maxX, maxY, found);
+        return result;
+    }
+
+    /**
+     * Caches tiles of specified range that were not found as empty.
+     *
+     * @param found bit mask of tiles that were found, row by row
+     */
+    private void cacheMissingTiles(int z, int minX, int minY, int maxX, int maxY, long found) {
+        int width = maxX - minX + 1;
+        if (width * (maxY - minY + 1) > 64)
+            return;
+        for (int y = minY; y <= maxY; y++)
+            for (int x = minX; x <= maxX; x++) {
+                if ((found & (1L << ((y - minY) * width + x - minX))) == 0L)
+                    mTileCache.put(TileKey.getKey(z, x, y), DecodedTileCache.EMPTY_TILE);
+            }
+    }
+
+    /**
+     * Decodes tile blob pointed by blob stream and caches decoded elements.
+     *
+     * @return decoded elements or null if tile failed to decode
+     */
+    @Nullable
+    private ExtendedMapElement[] decodeTile(int z, int x, int y, long key) throws IOException {
+        Tile tile = new Tile(x, y, (byte) z);
+        mDecodedTileDataSink.elements.clear();
+        boolean ok = mTileDecoder.decode(tile, mDecodedTileDataSink, mBlobInputStream);
+        mBlobInputStream.release();
+        if (!ok) {
+            logger.error("Failed to decode {}", tile);
+            return null;
+        }
+        ExtendedMapElement[] elements = mDecodedTileDataSink.elements.toArray(new ExtendedMapElement[mDecodedTileDataSink.elements.size()]);
+        mDecodedTileDataSink.elements.clear();
+        mTileCache.put(key, elements);
+        return elements;
+    }
+
     @Override
     public void dispose() {
     }
@@ -98,87 +393,76 @@ class MapTrekDataSource implements ITileDataSource {
     public void cancel() {
     }
 
+    /**
+     * Returns name of element in specified language. Is called by label hook while tile is
+     * processed, on first request names of all elements of current tile are resolved at once.
+     */
     String getName(int lang, long elementId) {
-        return MapTrekDatabaseHelper.getFeatureName(lang, elementId, mDatabase);
+        if (mTileIdCount > 0 && mTileNamesLang != lang) {
+            mTileNamesLang = lang;
+            mTileNames.clear();
+            MapTrekDatabaseHelper.getFeatureNames(lang, mTileIds, mTileIdCount, mDatabase, mTileNames);
+        }
+        String name = mTileNamesLang == lang ? mTileNames.get(elementId) : null;
+        if (name == null)
+            name = mNameCache.get(lang, elementId);
+        if (name == null) {
+            name = MapTrekDatabaseHelper.getFeatureName(lang, elementId, mDatabase);
+            mNameCache.put(lang, elementId, name);
+            return name;
+        }
+        //noinspection StringEquality
+        return name == FeatureNameCache.NO_NAME ? null : name;
+    }
+
+    private void setTileIds(ExtendedMapElement[] elements) {
+        if (mTileIds.length < elements.length)
+            mTileIds = new long[elements.length];
+        mTileIdCount = 0;
+        mTileNamesLang = -1;
+        mTileNames.clear();
+        for (ExtendedMapElement element : elements) {
+            if (element.id != 0L)
+                mTileIds[mTileIdCount++] = element.id;
+        }
     }
 
     void setContoursEnabled(boolean enabled) {
         mContoursEnabled = enabled;
     }
 
+    /**
+     * Filters elements according to zoom level and preferences before passing them to map.
+     */
     private class NativeTileDataSink implements ITileDataSink {
-        private final Tile tile;
-        private int scale;
-        private int dx;
-        private int dy;
-        private TileClipper mTileClipper;
-        private TileClipper mBuildingTileClipper;
+        private Tile tile;
         ITileDataSink mapDataSink;
         QueryResult result;
 
-        NativeTileDataSink(ITileDataSink mapDataSink, Tile tile, int dz, int x, int y) {
+        void set(ITileDataSink mapDataSink, Tile tile) {
             this.mapDataSink = mapDataSink;
             this.tile = tile;
-            scale = 1;
-            if (dz > 0) {
-                scale = 1 << dz;
-                dx = (tile.tileX - (x << dz)) * Tile.SIZE;
-                dy = (tile.tileY - (y << dz)) * Tile.SIZE;
-                mTileClipper = new TileClipper((dx - CLIP_BUFFER) / scale, (dy - CLIP_BUFFER) / scale,
-                        (dx + Tile.SIZE + CLIP_BUFFER) / scale, (dy + Tile.SIZE + CLIP_BUFFER) / scale);
-                mBuildingTileClipper = new TileClipper((dx - BUILDING_CLIP_BUFFER) / scale, (dy - BUILDING_CLIP_BUFFER) / scale,
-                        (dx + Tile.SIZE + BUILDING_CLIP_BUFFER) / scale, (dy + Tile.SIZE + BUILDING_CLIP_BUFFER) / scale);
-                /*
-                mBuildingTileClipper = new TileClipper(dx / scale, dy / scale,
-                        (dx + Tile.SIZE) / scale, (dy + Tile.SIZE) / scale);
-                        */
-            }
         }
 
         @Override
         public void process(MapElement el) {
             ExtendedMapElement element = (ExtendedMapElement) el;
 
-            if (tile.zoomLevel < 17 && element.isBuildingPart && !element.isBuilding)
+            if (!element.setKindTags(tile.zoomLevel))
+                return;
+            if (tile.zoomLevel < 17 && element.isSeparateBuildingPart())
                 return;
-            if (!mContoursEnabled && element.isContour)
+            if (!mContoursEnabled && element.hasFlag(ExtendedMapElement.FLAG_CONTOUR))
                 return;
             if (element.layer < 5) {
                 //TODO Find a better solution to hide subway platforms
-                if ("platform".equals(element.tags.getValue("railway")))
+                if (element.hasFlag(ExtendedMapElement.FLAG_PLATFORM))
                     return;
                 //TODO Properly process tunnels (requires changes to VTM)
-                if (element.tags.containsKey("tunnel"))
+                if (element.hasFlag(ExtendedMapElement.FLAG_TUNNEL))
                     element.layer = 5;
             }
 
-            // Convert tree points to polygons
-            if (tile.zoomLevel > 15 && element.type == GeometryBuffer.GeometryType.POINT && element.tags.contains(TAG_TREE)) {
-                float x = element.getPointX(0);
-                float y = element.getPointY(0);
-                GeometryBuffer geom = GeometryBuffer.makeCircle(x, y, 1.1f, 10);
-                element.ensurePointSize(geom.getNumPoints(), false);
-                element.type = GeometryBuffer.GeometryType.POLY;
-                System.arraycopy(geom.points, 0, element.points, 0, geom.points.length);
-                element.index[0] = geom.points.length;
-                if (element.index.length > 1)
-                    element.index[1] = -1;
-            }
-
-            if (scale != 1) {
-                TileClipper clipper = element.isBuildingPart && !element.isBuilding ? mBuildingTileClipper : mTileClipper;
-                if (!clipper.clip(element))
-                    return;
-                element.scale(scale, scale);
-                element.translate(-dx, -dy);
-                if (element.hasLabelPosition && element.labelPosition != null) {
-                    element.labelPosition.x = element.labelPosition.x * scale - dx;
-                    element.labelPosition.y = element.labelPosition.y * scale - dy;
-                    if (element.labelPosition.x < 0 || element.labelPosition.x > Tile.SIZE
-                            || element.labelPosition.y < 0 || element.labelPosition.y > Tile.SIZE)
-                        element.labelPosition = null;
-                }
-            }
             if (element.id != 0L) {
                 element.database = MapTrekDataSource.this;
             }
@@ -207,4 +491,23 @@ class MapTrekDataSource implements ITileDataSource {
         }
     }
 
+    /**
+     * Collects compact copies of decoded elements for caching.
+     */
+    private class DecodedTileDataSink implements ITileDataSink {
+        final ArrayList<ExtendedMapElement> elements = new ArrayList<>();
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(new ExtendedMapElement((ExtendedMapElement) element));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+        }
+    }
 }
@@ -18,10 +18,14 @@ package mobi.maptrek.maps.maptrek;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.Nullable;
+import android.util.LongSparseArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +34,7 @@ import java.io.File;
 import java.io.IOException;
 
 import mobi.maptrek.data.Waypoint;
+import mobi.maptrek.util.ProgressListener;
 
 public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
     private static final Logger logger = LoggerFactory.getLogger(MapTrekDatabaseHelper.class);
@@ -43,6 +48,7 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
     static final String TABLE_NAMES = "names";
     @SuppressWarnings("WeakerAccess")
     static final String TABLE_NAMES_FTS = "names_fts";
+    private static final String TABLE_NAMES_FTS_PENDING = "names_fts_pending";
     static final String TABLE_FEATURES = "features";
     static final String TABLE_FEATURE_NAMES = "feature_names";
 
@@ -62,8 +68,8 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
     static final String COLUMN_INFO_VALUE = "value";
 
     private static final String COLUMN_TILES_ZOOM_LEVEL = "zoom_level";
-    private static final String COLUMN_TILES_COLUMN = "tile_column";
-    private static final String COLUMN_TILES_ROW = "tile_row";
+    static final String COLUMN_TILES_COLUMN = "tile_column";
+    static final String COLUMN_TILES_ROW = "tile_row";
     static final String COLUMN_TILES_DATA = "tile_data";
 
     private static final String COLUMN_NAMES_REF = "ref";
@@ -125,6 +131,12 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
                     + TABLE_NAMES + "\", " + COLUMN_NAMES_NAME
                     + ")";
 
+    private static final String SQL_CREATE_NAMES_FTS_PENDING =
+            "CREATE TABLE IF NOT EXISTS "
+                    + TABLE_NAMES_FTS_PENDING + " ("
+                    + COLUMN_NAMES_REF + " INTEGER PRIMARY KEY"
+                    + ")";
+
     private static final String SQL_CREATE_FEATURES =
             "CREATE TABLE IF NOT EXISTS "
                     + TABLE_FEATURES + " ("
@@ -150,47 +162,246 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
                     + COLUMN_TILES_ROW + " >= ? AND "
                     + COLUMN_TILES_ROW + " <= ?";
 
-    static final String SQL_REMOVE_FEATURES =
-            "DELETE FROM " + TABLE_FEATURES + " WHERE "
-                    + COLUMN_FEATURES_ID + " IN (SELECT a."
-                    + COLUMN_MAP_FEATURES_FEATURE + " FROM "
-                    + TABLE_MAP_FEATURES + " AS a LEFT JOIN "
-                    + TABLE_MAP_FEATURES + " AS b ON (a."
-                    + COLUMN_MAP_FEATURES_FEATURE + " = b."
-                    + COLUMN_MAP_FEATURES_FEATURE + " AND (a."
-                    + COLUMN_MAP_FEATURES_COLUMN + " != b."
-                    + COLUMN_MAP_FEATURES_COLUMN + " OR a."
-                    + COLUMN_MAP_FEATURES_ROW + " != b."
-                    + COLUMN_MAP_FEATURES_ROW + ")) WHERE a."
-                    + COLUMN_MAP_FEATURES_COLUMN + " = ? AND a."
-                    + COLUMN_MAP_FEATURES_ROW + " = ? AND b."
-                    + COLUMN_MAP_FEATURES_FEATURE + " IS NULL)";
+    static final String IMPORT_SCHEMA = "downloaded";
 
-    static final String SQL_REMOVE_FEATURE_NAMES =
+    static final String SQL_ATTACH_IMPORT = "ATTACH DATABASE ? AS " + IMPORT_SCHEMA;
+
+    static final String SQL_IMPORT_NAMES_FTS_PENDING =
+            "INSERT OR IGNORE INTO " + TABLE_NAMES_FTS_PENDING + " SELECT "
+                    + COLUMN_NAMES_REF + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_NAMES + " WHERE "
+                    + COLUMN_NAMES_REF + " NOT IN (SELECT "
+                    + COLUMN_NAMES_REF + " FROM main." + TABLE_NAMES + ")";
+
+    static final String SQL_IMPORT_NAMES =
+            "REPLACE INTO " + TABLE_NAMES + " SELECT "
+                    + COLUMN_NAMES_REF + ", "
+                    + COLUMN_NAMES_NAME + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_NAMES;
+
+    static final String SQL_IMPORT_FEATURES =
+            "REPLACE INTO " + TABLE_FEATURES + " SELECT "
+                    + COLUMN_FEATURES_ID + ", "
+                    + COLUMN_FEATURES_KIND + ", "
+                    + COLUMN_FEATURES_LAT + ", "
+                    + COLUMN_FEATURES_LON + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURES;
+
+    static final String SQL_IMPORT_MAP_FEATURES =
+            "REPLACE INTO " + TABLE_MAP_FEATURES + " SELECT ?, ?, "
+                    + COLUMN_FEATURES_ID + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURES;
+
+    static final String SQL_IMPORT_FEATURE_NAMES =
+            "REPLACE INTO " + TABLE_FEATURE_NAMES + " SELECT "
+                    + COLUMN_FEATURES_ID + ", "
+                    + COLUMN_FEATURES_NAMES_LANG + ", "
+                    + COLUMN_FEATURES_NAMES_NAME + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURE_NAMES;
+
+    static final String SQL_IMPORT_TILES =
+            "REPLACE INTO " + TABLE_TILES + " SELECT "
+                    + COLUMN_TILES_ZOOM_LEVEL + ", "
+                    + COLUMN_TILES_COLUMN + ", "
+                    + COLUMN_TILES_ROW + ", "
+                    + COLUMN_TILES_DATA + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_TILES;
+
+    // statements below update already installed map area with downloaded version writing only changed rows
+
+    private static final String TABLE_ORPHAN_NAMES = "orphan_names";
+
+    static final String SQL_CREATE_ORPHAN_NAMES =
+            "CREATE TEMP TABLE IF NOT EXISTS "
+                    + TABLE_ORPHAN_NAMES + " ("
+                    + COLUMN_NAMES_REF + " INTEGER PRIMARY KEY"
+                    + ")";
+
+    static final String SQL_CLEAR_ORPHAN_NAMES = "DELETE FROM " + TABLE_ORPHAN_NAMES;
+
+    static final String SQL_UPDATE_NAMES =
+            SQL_IMPORT_NAMES + " AS n WHERE NOT EXISTS (SELECT 1 FROM main."
+                    + TABLE_NAMES + " AS o WHERE o."
+                    + COLUMN_NAMES_REF + " = n."
+                    + COLUMN_NAMES_REF + " AND o."
+                    + COLUMN_NAMES_NAME + " = n."
+                    + COLUMN_NAMES_NAME + ")";
+
+    static final String SQL_UPDATE_FEATURES =
+            SQL_IMPORT_FEATURES + " AS n WHERE NOT EXISTS (SELECT 1 FROM main."
+                    + TABLE_FEATURES + " AS o WHERE o."
+                    + COLUMN_FEATURES_ID + " = n."
+                    + COLUMN_FEATURES_ID + " AND o."
+                    + COLUMN_FEATURES_KIND + " IS n."
+                    + COLUMN_FEATURES_KIND + " AND o."
+                    + COLUMN_FEATURES_LAT + " IS n."
+                    + COLUMN_FEATURES_LAT + " AND o."
+                    + COLUMN_FEATURES_LON + " IS n."
+                    + COLUMN_FEATURES_LON + ")";
+
+    static final String SQL_UPDATE_MAP_FEATURES =
+            "INSERT OR IGNORE INTO " + TABLE_MAP_FEATURES + " SELECT ?, ?, "
+                    + COLUMN_FEATURES_ID + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURES;
+
+    static final String SQL_UPDATE_TILES =
+            SQL_IMPORT_TILES + " AS n WHERE NOT EXISTS (SELECT 1 FROM main."
+                    + TABLE_TILES + " AS o WHERE o."
+                    + COLUMN_TILES_ZOOM_LEVEL + " = n."
+                    + COLUMN_TILES_ZOOM_LEVEL + " AND o."
+                    + COLUMN_TILES_COLUMN + " = n."
+                    + COLUMN_TILES_COLUMN + " AND o."
+                    + COLUMN_TILES_ROW + " = n."
+                    + COLUMN_TILES_ROW + " AND o."
+                    + COLUMN_TILES_DATA + " = n."
+                    + COLUMN_TILES_DATA + ")";
+
+    static final String SQL_REMOVE_STALE_TILES =
+            SQL_REMOVE_TILES + " AND NOT EXISTS (SELECT 1 FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_TILES + " AS n WHERE n."
+                    + COLUMN_TILES_ZOOM_LEVEL + " = " + TABLE_TILES + "."
+                    + COLUMN_TILES_ZOOM_LEVEL + " AND n."
+                    + COLUMN_TILES_COLUMN + " = " + TABLE_TILES + "."
+                    + COLUMN_TILES_COLUMN + " AND n."
+                    + COLUMN_TILES_ROW + " = " + TABLE_TILES + "."
+                    + COLUMN_TILES_ROW + ")";
+
+    // features of area (x = ?, y = ?) that are absent in downloaded version and are not used by other areas
+    private static final String SQL_SELECT_STALE_FEATURES =
+            "SELECT a." + COLUMN_MAP_FEATURES_FEATURE + " FROM "
+                    + TABLE_MAP_FEATURES + " AS a WHERE a."
+                    + COLUMN_MAP_FEATURES_COLUMN + " = ? AND a."
+                    + COLUMN_MAP_FEATURES_ROW + " = ? AND a."
+                    + COLUMN_MAP_FEATURES_FEATURE + " NOT IN (SELECT "
+                    + COLUMN_FEATURES_ID + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURES + ") AND NOT EXISTS (SELECT 1 FROM "
+                    + TABLE_MAP_FEATURES + " AS b WHERE b."
+                    + COLUMN_MAP_FEATURES_FEATURE + " = a."
+                    + COLUMN_MAP_FEATURES_FEATURE + " AND (b."
+                    + COLUMN_MAP_FEATURES_COLUMN + " != a."
+                    + COLUMN_MAP_FEATURES_COLUMN + " OR b."
+                    + COLUMN_MAP_FEATURES_ROW + " != a."
+                    + COLUMN_MAP_FEATURES_ROW + "))";
+
+    static final String SQL_COLLECT_STALE_FEATURE_NAMES =
+            "INSERT OR IGNORE INTO " + TABLE_ORPHAN_NAMES + " SELECT "
+                    + COLUMN_FEATURES_NAMES_NAME + " FROM "
+                    + TABLE_FEATURE_NAMES + " WHERE "
+                    + COLUMN_FEATURES_ID + " IN (" + SQL_SELECT_STALE_FEATURES + ")";
+
+    static final String SQL_REMOVE_STALE_FEATURE_NAMES =
             "DELETE FROM " + TABLE_FEATURE_NAMES + " WHERE "
-                    + COLUMN_FEATURES_ID + " IN (SELECT "
-                    + TABLE_FEATURE_NAMES + "." + COLUMN_FEATURES_ID + " FROM "
-                    + TABLE_FEATURE_NAMES + " LEFT JOIN "
-                    + TABLE_FEATURES + " ON ("
-                    + TABLE_FEATURE_NAMES + "." + COLUMN_FEATURES_ID + " = "
-                    + TABLE_FEATURES + "." + COLUMN_FEATURES_ID + ") WHERE "
-                    + TABLE_FEATURES + "." + COLUMN_FEATURES_ID + " IS NULL)";
-
-    static final String SQL_SELECT_UNUSED_NAMES =
-            "SELECT "
+                    + COLUMN_FEATURES_ID + " IN (" + SQL_SELECT_STALE_FEATURES + ")";
+
+    static final String SQL_REMOVE_STALE_FEATURES =
+            "DELETE FROM " + TABLE_FEATURES + " WHERE "
+                    + COLUMN_FEATURES_ID + " IN (" + SQL_SELECT_STALE_FEATURES + ")";
+
+    static final String SQL_REMOVE_STALE_MAP_FEATURES =
+            "DELETE FROM " + TABLE_MAP_FEATURES + " WHERE "
+                    + COLUMN_MAP_FEATURES_COLUMN + " = ? AND "
+                    + COLUMN_MAP_FEATURES_ROW + " = ? AND "
+                    + COLUMN_MAP_FEATURES_FEATURE + " NOT IN (SELECT "
+                    + COLUMN_FEATURES_ID + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURES + ")";
+
+    // names of downloaded features that differ from installed ones
+    private static final String WHERE_CHANGED_FEATURE_NAMES =
+            COLUMN_FEATURES_ID + " IN (SELECT "
+                    + COLUMN_FEATURES_ID + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURES + ") AND NOT EXISTS (SELECT 1 FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURE_NAMES + " AS n WHERE n."
+                    + COLUMN_FEATURES_ID + " = " + TABLE_FEATURE_NAMES + "."
+                    + COLUMN_FEATURES_ID + " AND n."
+                    + COLUMN_FEATURES_NAMES_LANG + " = " + TABLE_FEATURE_NAMES + "."
+                    + COLUMN_FEATURES_NAMES_LANG + " AND n."
+                    + COLUMN_FEATURES_NAMES_NAME + " = " + TABLE_FEATURE_NAMES + "."
+                    + COLUMN_FEATURES_NAMES_NAME + ")";
+
+    static final String SQL_COLLECT_CHANGED_FEATURE_NAMES =
+            "INSERT OR IGNORE INTO " + TABLE_ORPHAN_NAMES + " SELECT "
+                    + COLUMN_FEATURES_NAMES_NAME + " FROM "
+                    + TABLE_FEATURE_NAMES + " WHERE " + WHERE_CHANGED_FEATURE_NAMES;
+
+    static final String SQL_REMOVE_CHANGED_FEATURE_NAMES =
+            "DELETE FROM " + TABLE_FEATURE_NAMES + " WHERE " + WHERE_CHANGED_FEATURE_NAMES;
+
+    static final String SQL_UPDATE_FEATURE_NAMES =
+            "INSERT OR IGNORE INTO " + TABLE_FEATURE_NAMES + " SELECT "
+                    + COLUMN_FEATURES_ID + ", "
+                    + COLUMN_FEATURES_NAMES_LANG + ", "
+                    + COLUMN_FEATURES_NAMES_NAME + " FROM "
+                    + IMPORT_SCHEMA + "." + TABLE_FEATURE_NAMES;
+
+    // collected names that are not referenced by any feature anymore
+    private static final String SQL_SELECT_ORPHAN_NAMES =
+            "SELECT " + COLUMN_NAMES_REF + " FROM "
+                    + TABLE_ORPHAN_NAMES + " WHERE NOT EXISTS (SELECT 1 FROM "
+                    + TABLE_FEATURE_NAMES + " WHERE "
+                    + TABLE_FEATURE_NAMES + "." + COLUMN_FEATURES_NAMES_NAME + " = "
+                    + TABLE_ORPHAN_NAMES + "." + COLUMN_NAMES_REF + ")";
+
+    static final String SQL_REMOVE_ORPHAN_NAMES_FTS =
+            "DELETE FROM " + TABLE_NAMES_FTS + " WHERE docid IN ("
+                    + SQL_SELECT_ORPHAN_NAMES + " AND "
+                    + COLUMN_NAMES_REF + " NOT IN (SELECT "
                     + COLUMN_NAMES_REF + " FROM "
-                    + TABLE_NAMES + " LEFT JOIN "
-                    + TABLE_FEATURE_NAMES + " ON ("
-                    + COLUMN_NAMES_REF + " = "
-                    + TABLE_FEATURE_NAMES + "." + COLUMN_FEATURES_NAMES_NAME + ") WHERE "
-                    + COLUMN_FEATURES_ID + " IS NULL";
+                    + TABLE_NAMES_FTS_PENDING + "))";
+
+    static final String SQL_REMOVE_ORPHAN_NAMES_FTS_PENDING =
+            "DELETE FROM " + TABLE_NAMES_FTS_PENDING + " WHERE "
+                    + COLUMN_NAMES_REF + " IN (" + SQL_SELECT_ORPHAN_NAMES + ")";
 
-    static final String SQL_REMOVE_NAMES =
+    static final String SQL_REMOVE_ORPHAN_NAMES =
             "DELETE FROM " + TABLE_NAMES + " WHERE "
-                    + COLUMN_NAMES_REF + " IN (" + SQL_SELECT_UNUSED_NAMES + ")";
+                    + COLUMN_NAMES_REF + " IN (" + SQL_SELECT_ORPHAN_NAMES + ")";
+
+    // statements below remove map area in batches of its features, bound with x, y and feature range
+
+    static final String SQL_SELECT_AREA_FEATURES_BOUND =
+            "SELECT " + COLUMN_MAP_FEATURES_FEATURE + " FROM "
+                    + TABLE_MAP_FEATURES + " WHERE "
+                    + COLUMN_MAP_FEATURES_COLUMN + " = ? AND "
+                    + COLUMN_MAP_FEATURES_ROW + " = ? AND "
+                    + COLUMN_MAP_FEATURES_FEATURE + " > ? ORDER BY "
+                    + COLUMN_MAP_FEATURES_FEATURE + " LIMIT 1 OFFSET ?";
+
+    // features of area in range that are not used by other areas
+    private static final String SQL_SELECT_OWNED_FEATURES =
+            "SELECT a." + COLUMN_MAP_FEATURES_FEATURE + " FROM "
+                    + TABLE_MAP_FEATURES + " AS a WHERE a."
+                    + COLUMN_MAP_FEATURES_COLUMN + " = ? AND a."
+                    + COLUMN_MAP_FEATURES_ROW + " = ? AND a."
+                    + COLUMN_MAP_FEATURES_FEATURE + " > ? AND a."
+                    + COLUMN_MAP_FEATURES_FEATURE + " <= ? AND NOT EXISTS (SELECT 1 FROM "
+                    + TABLE_MAP_FEATURES + " AS b WHERE b."
+                    + COLUMN_MAP_FEATURES_FEATURE + " = a."
+                    + COLUMN_MAP_FEATURES_FEATURE + " AND (b."
+                    + COLUMN_MAP_FEATURES_COLUMN + " != a."
+                    + COLUMN_MAP_FEATURES_COLUMN + " OR b."
+                    + COLUMN_MAP_FEATURES_ROW + " != a."
+                    + COLUMN_MAP_FEATURES_ROW + "))";
+
+    static final String SQL_COLLECT_OWNED_FEATURE_NAMES =
+            "INSERT OR IGNORE INTO " + TABLE_ORPHAN_NAMES + " SELECT "
+                    + COLUMN_FEATURES_NAMES_NAME + " FROM "
+                    + TABLE_FEATURE_NAMES + " WHERE "
+                    + COLUMN_FEATURES_ID + " IN (" + SQL_SELECT_OWNED_FEATURES + ")";
+
+    static final String SQL_REMOVE_OWNED_FEATURE_NAMES =
+            "DELETE FROM " + TABLE_FEATURE_NAMES + " WHERE "
+                    + COLUMN_FEATURES_ID + " IN (" + SQL_SELECT_OWNED_FEATURES + ")";
 
-    static final String SQL_REMOVE_NAMES_FTS =
-            "DELETE FROM " + TABLE_NAMES_FTS + " WHERE docid IN (";
+    static final String SQL_REMOVE_OWNED_FEATURES =
+            "DELETE FROM " + TABLE_FEATURES + " WHERE "
+                    + COLUMN_FEATURES_ID + " IN (" + SQL_SELECT_OWNED_FEATURES + ")";
+
+    static final String SQL_REMOVE_AREA_MAP_FEATURES =
+            "DELETE FROM " + TABLE_MAP_FEATURES + " WHERE "
+                    + COLUMN_MAP_FEATURES_COLUMN + " = ? AND "
+                    + COLUMN_MAP_FEATURES_ROW + " = ? AND "
+                    + COLUMN_MAP_FEATURES_FEATURE + " > ? AND "
+                    + COLUMN_MAP_FEATURES_FEATURE + " <= ?";
 
     static final String[] ALL_COLUMNS_MAPS = {
             COLUMN_MAPS_X,
@@ -227,11 +438,18 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
     };
 
     private static final String SQL_GET_NAME = "SELECT names.name, lang FROM names INNER JOIN feature_names ON (ref = feature_names.name) WHERE id = ? AND lang IN (0, ?) ORDER BY lang";
+    // id list is appended as literals and closed by caller
+    private static final String SQL_GET_NAMES = "SELECT id, names.name, lang FROM names INNER JOIN feature_names ON (ref = feature_names.name) WHERE lang IN (0, ?) AND id IN (";
+    private static final int GET_NAMES_BATCH_SIZE = 500;
 
     static final String WHERE_MAPS_XY = COLUMN_MAPS_X + " = ? AND " + COLUMN_MAPS_Y + " = ?";
+    static final String WHERE_MAP_FEATURES_XY = COLUMN_MAP_FEATURES_COLUMN + " = ? AND " + COLUMN_MAP_FEATURES_ROW + " = ?";
     static final String WHERE_INFO_NAME = COLUMN_INFO_NAME + " = ?";
     static final String WHERE_MAPS_PRESENT = COLUMN_MAPS_DATE + " > 0 OR " + COLUMN_MAPS_DOWNLOADING + " > 0";
     static final String WHERE_TILE_ZXY = COLUMN_TILES_ZOOM_LEVEL + " = ? AND " + COLUMN_TILES_COLUMN + " = ? AND " + COLUMN_TILES_ROW + " = ?";
+    static final String WHERE_TILE_RANGE = COLUMN_TILES_ZOOM_LEVEL + " = ? AND "
+            + COLUMN_TILES_COLUMN + " >= ? AND " + COLUMN_TILES_COLUMN + " <= ? AND "
+            + COLUMN_TILES_ROW + " >= ? AND " + COLUMN_TILES_ROW + " <= ?";
 
     private static final String SQL_INSERT_NAMES_FTS = "INSERT INTO "
             + TABLE_NAMES_FTS + "(docid, "
@@ -240,6 +458,33 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
             + COLUMN_NAMES_NAME + " FROM "
             + TABLE_NAMES;
 
+    static final String SQL_INSERT_NAME_FTS_PENDING = "INSERT OR IGNORE INTO "
+            + TABLE_NAMES_FTS_PENDING + " SELECT ? WHERE NOT EXISTS (SELECT 1 FROM "
+            + TABLE_NAMES + " WHERE "
+            + COLUMN_NAMES_REF + " = ?)";
+
+    private static final String SQL_SELECT_NAMES_FTS_PENDING = "SELECT "
+            + COLUMN_NAMES_REF + " FROM "
+            + TABLE_NAMES_FTS_PENDING + " ORDER BY "
+            + COLUMN_NAMES_REF + " LIMIT 1 OFFSET ?";
+
+    private static final String SQL_INSERT_PENDING_NAMES_FTS = "INSERT INTO "
+            + TABLE_NAMES_FTS + "(docid, "
+            + COLUMN_NAMES_NAME + ") SELECT "
+            + COLUMN_NAMES_REF + ", "
+            + COLUMN_NAMES_NAME + " FROM "
+            + TABLE_NAMES + " WHERE "
+            + COLUMN_NAMES_REF + " IN (SELECT "
+            + COLUMN_NAMES_REF + " FROM "
+            + TABLE_NAMES_FTS_PENDING + " WHERE "
+            + COLUMN_NAMES_REF + " <= ?)";
+
+    private static final String SQL_REMOVE_PENDING_NAMES = "DELETE FROM "
+            + TABLE_NAMES_FTS_PENDING + " WHERE "
+            + COLUMN_NAMES_REF + " <= ?";
+
+    private static final int FTS_UPDATE_BATCH_SIZE = 5000;
+
     private static final String SQL_INDEX_INFO = "CREATE UNIQUE INDEX IF NOT EXISTS property ON metadata (name)";
     static final String SQL_INDEX_MAPS = "CREATE UNIQUE INDEX IF NOT EXISTS maps_x_y ON maps (x, y)";
     private static final String SQL_INDEX_MAP_FEATURES = "CREATE INDEX IF NOT EXISTS map_feature_ids ON map_features (feature)";
@@ -271,6 +516,7 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
     public void onOpen(SQLiteDatabase db) {
         super.onOpen(db);
         createWorldMapTables(db);
+        db.execSQL(SQL_CREATE_NAMES_FTS_PENDING);
         logger.info("Vacuuming maps database");
         Cursor cursor = db.rawQuery(PRAGMA_VACUUM, null);
         if (cursor.moveToFirst())
@@ -345,9 +591,62 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(SQL_CREATE_NAMES_FTS);
         logger.debug("Populate fts");
         db.execSQL(SQL_INSERT_NAMES_FTS);
+        // all names are indexed now
+        db.execSQL("DELETE FROM " + TABLE_NAMES_FTS_PENDING);
         logger.debug("Finished populating fts");
     }
 
+    /**
+     * Adds names imported with maps to full text index. Names are indexed in batches, each in
+     * its own transaction, so that database is not locked for a long time and indexing can be
+     * resumed if interrupted.
+     */
+    public static void updateFtsTable(SQLiteDatabase db, @Nullable ProgressListener progressListener) {
+        long total = DatabaseUtils.queryNumEntries(db, TABLE_NAMES_FTS_PENDING);
+        if (total == 0L)
+            return;
+        logger.debug("Update fts with {} names", total);
+        if (progressListener != null)
+            progressListener.onProgressStarted((int) total);
+        SQLiteStatement lastStatement = db.compileStatement(SQL_SELECT_NAMES_FTS_PENDING);
+        lastStatement.bindLong(1, FTS_UPDATE_BATCH_SIZE - 1);
+        SQLiteStatement insertStatement = db.compileStatement(SQL_INSERT_PENDING_NAMES_FTS);
+        SQLiteStatement removeStatement = db.compileStatement(SQL_REMOVE_PENDING_NAMES);
+        long progress = 0L;
+        while (progress < total) {
+            long last;
+            try {
+                last = lastStatement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                // last batch
+                last = Long.MAX_VALUE;
+            }
+            db.beginTransaction();
+            try {
+                insertStatement.bindLong(1, last);
+                insertStatement.execute();
+                removeStatement.bindLong(1, last);
+                progress += removeStatement.executeUpdateDelete();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (progressListener != null)
+                progressListener.onProgressChanged((int) progress);
+            if (last == Long.MAX_VALUE)
+                break;
+        }
+        lastStatement.close();
+        insertStatement.close();
+        removeStatement.close();
+        Cursor cursor = db.rawQuery(FTS_MERGE, null);
+        cursor.moveToFirst();
+        cursor.close();
+        if (progressListener != null)
+            progressListener.onProgressFinished();
+        logger.debug("Finished updating fts");
+    }
+
     public static boolean hasFullTextIndex(SQLiteDatabase db) {
         try {
             String[] selectionArgs = {"Antarctica"};
@@ -402,6 +701,45 @@ public class MapTrekDatabaseHelper extends SQLiteOpenHelper {
         return null;
     }
 
+    /**
+     * Resolves names of multiple features with one query per batch of ids and puts them to
+     * provided map. Features that have no name are marked with {@link FeatureNameCache#NO_NAME}
+     * only if batch query succeeds, so that failed query is retried later.
+     */
+    static void getFeatureNames(int lang, long[] ids, int count, SQLiteDatabase db, LongSparseArray<String> names) {
+        String[] args = {String.valueOf(lang)};
+        StringBuilder sql = new StringBuilder();
+        for (int offset = 0; offset < count; offset += GET_NAMES_BATCH_SIZE) {
+            int end = Math.min(offset + GET_NAMES_BATCH_SIZE, count);
+            sql.setLength(0);
+            sql.append(SQL_GET_NAMES);
+            for (int i = offset; i < end; i++) {
+                if (i > offset)
+                    sql.append(',');
+                sql.append(ids[i]);
+            }
+            sql.append(')');
+            try (Cursor c = db.rawQuery(sql.toString(), args)) {
+                // default names go first so that preferred names replace them
+                while (c.moveToNext()) {
+                    if (c.getInt(2) == 0 && !c.isNull(1))
+                        names.put(c.getLong(0), c.getString(1));
+                }
+                if (lang != 0 && c.moveToFirst())
+                    do {
+                        if (c.getInt(2) != 0 && !c.isNull(1))
+                            names.put(c.getLong(0), c.getString(1));
+                    } while (c.moveToNext());
+                for (int i = offset; i < end; i++) {
+                    if (names.indexOfKey(ids[i]) < 0)
+                        names.put(ids[i], FeatureNameCache.NO_NAME);
+                }
+            } catch (Exception e) {
+                logger.error("Query error", e);
+            }
+        }
+    }
+
     public static int getLanguageId(@Nullable String lang) {
         if (lang == null)
             return 0;
@@ -79,6 +79,7 @@ class MapTrekTileDecoder extends PbfDecoder {
     private static final int TAG_ELEM_HOUSE_NUMBER = 38;
 
     private int[] mSArray = new int[100];
+    private int[] mTileTagFlags = new int[100];
 
     private Tile mTile;
 
@@ -131,7 +132,7 @@ class MapTrekTileDecoder extends PbfDecoder {
                 case TAG_TILE_POLY:
                 case TAG_TILE_POINT:
                 case TAG_TILE_MESH:
-                    decodeTileElement(tile, tag);
+                    decodeTileElement(tag);
                     break;
 
                 case TAG_TILE_TAG_KEYS:
@@ -173,6 +174,8 @@ class MapTrekTileDecoder extends PbfDecoder {
                         mSArray = new int[len];
 
                     decodeVarintArray(len, mSArray);
+                    if (mTileTagFlags.length < numTags)
+                        mTileTagFlags = new int[numTags];
                     if (!decodeTileTags(numTags, mSArray, keys, values)) {
                         log.error("{} invalid tags", mTile);
                         return false;
@@ -200,10 +203,18 @@ class MapTrekTileDecoder extends PbfDecoder {
     }
 
     private boolean decodeTileTags(int numTags, int[] tagIdx, String[] keys, String[] vals) {
-        Tag tag;
         for (int i = 0, n = (numTags << 1); i < n; i += 2) {
             int k = tagIdx[i];
             int v = tagIdx[i + 1];
+
+            // most tags are composed of built-in keys and values, they are shared between tiles
+            if (k <= Tags.MAX_KEY && v <= Tags.MAX_VALUE) {
+                Tag tag = TagTable.get(k, v);
+                mTileTagFlags[mTileTags.size()] = TagTable.getFlags(tag);
+                mTileTags.add(tag);
+                continue;
+            }
+
             String key, val;
 
             if (k < Tags.ATTRIB_OFFSET) {
@@ -234,16 +245,8 @@ class MapTrekTileDecoder extends PbfDecoder {
                 val = vals[v];
             }
 
-            // FIXME filter out all variable tags
-            // might depend on theme though
-            if (Tag.KEY_NAME.equals(key)
-                    || Tag.KEY_HOUSE_NUMBER.equals(key)
-                    || Tag.KEY_REF.equals(key)
-                    || Tag.KEY_ELE.equals(key))
-                tag = new Tag(key, val, false);
-            else
-                tag = new Tag(key, val, false, true);
-
+            Tag tag = TagTable.create(key, val);
+            mTileTagFlags[mTileTags.size()] = TagTable.getFlags(tag);
             mTileTags.add(tag);
         }
 
@@ -270,7 +273,7 @@ class MapTrekTileDecoder extends PbfDecoder {
         return coordCnt;
     }
 
-    private boolean decodeTileElement(Tile tile, int type) throws IOException {
+    private boolean decodeTileElement(int type) throws IOException {
         mElem.clearData();
 
         int bytes = decodeVarint32();
@@ -286,6 +289,9 @@ class MapTrekTileDecoder extends PbfDecoder {
         if (type == TAG_TILE_POINT) {
             coordCnt = 1;
             mElem.index[0] = 2;
+            // terminate index, buffer may contain indices of previous element
+            if (mElem.index.length > 1)
+                mElem.index[1] = -1;
         }
 
         int kind = -1;
@@ -429,24 +435,10 @@ class MapTrekTileDecoder extends PbfDecoder {
 
         if (kind >= 0) {
             mElem.kind = kind;
+            // Kind tags are added by data sink as they depend on zoom level and user preferences,
+            // here we only mark points that are shown solely because of their kind
             boolean place_road_building = (kind & 0x00000007) > 0;
-            kind = kind >> 3;
-            boolean someKind = kind > 0;
-            boolean hasKind = false;
-            for (int i = 0; i < 16; i++) {
-                if ((kind & 0x00000001) > 0) {
-                    int zoom = Tags.kindZooms[i];
-                    if (zoom <= tile.zoomLevel) {
-                        mElem.tags.add(new Tag(Tags.kinds[i], "yes"));
-                        hasKind = true;
-                    }
-                }
-                kind = kind >> 1;
-            }
-            if (!(hasKind || place_road_building || type != TAG_TILE_POINT || mElem.tags.size() > 1))
-                return true;
-            if (someKind)
-                mElem.tags.add(new Tag("kind", "yes"));
+            mElem.isKindOnly = !(place_road_building || type != TAG_TILE_POINT || mElem.tags.size() > 1);
         }
 
         if (houseNumber != null)
@@ -475,14 +467,8 @@ class MapTrekTileDecoder extends PbfDecoder {
                 log.error("{} invalid tag: {}", mTile, idx, i);
                 return false;
             }
-            Tag tag = mTileTags.get(idx);
-            if ("contour".equals(tag.key))
-                mElem.isContour = true;
-            if ("building".equals(tag.key))
-                mElem.isBuilding = true;
-            if ("building:part".equals(tag.key))
-                mElem.isBuildingPart = true;
-            mElem.tags.add(tag);
+            mElem.flags |= mTileTagFlags[idx];
+            mElem.tags.add(mTileTags.get(idx));
         }
 
         return true;
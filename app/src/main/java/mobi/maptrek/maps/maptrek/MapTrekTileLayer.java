@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.maps.maptrek;
+
+import org.oscim.layers.tile.vector.OsmTileLayer;
+import org.oscim.map.Map;
+
+import mobi.maptrek.Configuration;
+
+/**
+ * Vector tile layer for native maps. Each tile loader thread gets its own data source with
+ * its own decoder, so number of loaders defines how many tiles are decoded in parallel.
+ */
+public class MapTrekTileLayer extends OsmTileLayer {
+    private static final int MAX_LOADERS = 8;
+
+    public MapTrekTileLayer(Map map) {
+        super(map);
+    }
+
+    /**
+     * Called from super constructor, must not depend on instance fields.
+     */
+    @Override
+    protected int getNumLoaders() {
+        int loaders = Configuration.getMapLoaderThreads();
+        if (loaders <= 0)
+            loaders = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(loaders, MAX_LOADERS));
+    }
+}
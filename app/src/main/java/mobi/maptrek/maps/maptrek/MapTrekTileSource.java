@@ -29,8 +29,11 @@ import org.oscim.tiling.QueryResult;
 import org.oscim.tiling.TileSource;
 import org.oscim.utils.geom.TileClipper;
 
+import java.io.File;
 import java.util.HashSet;
 
+import mobi.maptrek.Configuration;
+
 public class MapTrekTileSource extends TileSource {
     private static final MapElement mLand = new MapElement();
 
@@ -47,6 +50,10 @@ public class MapTrekTileSource extends TileSource {
 
     private final SQLiteDatabase mNativeMapDatabase;
     private final HashSet<MapTrekDataSource> mMapTrekDataSources;
+    private final DecodedTileCache mTileCache;
+    private final TileArchives mTileArchives;
+    private final FeatureNameCache mNameCache;
+    private MapTrekDataSource mFetchDataSource;
     private OnDataMissingListener mOnDataMissingListener;
     private boolean mContoursEnabled = true;
 
@@ -54,6 +61,9 @@ public class MapTrekTileSource extends TileSource {
         super(2, 17);
         mNativeMapDatabase = nativeMapDatabase;
         mMapTrekDataSources = new HashSet<>();
+        mTileCache = new DecodedTileCache(Configuration.getTileCacheSize() * 1024L * 1024L);
+        mTileArchives = new TileArchives(new File(nativeMapDatabase.getPath()).getParentFile());
+        mNameCache = new FeatureNameCache();
     }
 
     public void setContoursEnabled(boolean enabled) {
@@ -62,13 +72,33 @@ public class MapTrekTileSource extends TileSource {
             source.setContoursEnabled(enabled);
     }
 
+    /**
+     * Drops decoded tiles and opened tile archives, should be called when native maps are
+     * added or removed.
+     */
+    public void clearCache() {
+        mTileCache.clear();
+        mTileArchives.clear();
+        mNameCache.clear();
+    }
+
+    /**
+     * Loads all native tiles in specified range with single database query and decodes them
+     * into cache, so that following tile requests do not hit database.
+     */
+    public synchronized void fetchTiles(int zoom, int minX, int minY, int maxX, int maxY) {
+        if (mFetchDataSource == null)
+            mFetchDataSource = new MapTrekDataSource(mNativeMapDatabase, mTileCache, mTileArchives, mNameCache);
+        mFetchDataSource.fetchTiles(zoom, minX, minY, maxX, maxY);
+    }
+
     public void setOnDataMissingListener(OnDataMissingListener onDataMissingListener) {
         mOnDataMissingListener = onDataMissingListener;
     }
 
     @Override
     public ITileDataSource getDataSource() {
-        MapTrekDataSource mapTrekDataSource = new MapTrekDataSource(mNativeMapDatabase);
+        MapTrekDataSource mapTrekDataSource = new MapTrekDataSource(mNativeMapDatabase, mTileCache, mTileArchives, mNameCache);
         mapTrekDataSource.setContoursEnabled(mContoursEnabled);
         mMapTrekDataSources.add(mapTrekDataSource);
         return new NativeDataSource(mapTrekDataSource);
@@ -85,6 +115,7 @@ public class MapTrekTileSource extends TileSource {
 
     @Override
     public void close() {
+        mTileCache.clear();
     }
 
     private class NativeDataSource implements ITileDataSource {
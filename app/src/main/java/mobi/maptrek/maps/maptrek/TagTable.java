@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.maps.maptrek;
+
+import org.oscim.core.Tag;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonical tags shared by all tile decoders. Tags composed of built-in keys and values are
+ * created once and then reused, table is filled lazily without locking - concurrent decoders
+ * may create equal tags for the same slot, any of them can be kept.
+ */
+final class TagTable {
+    private static final int VALUES = Tags.MAX_VALUE + 1;
+    private static final AtomicReferenceArray<Tag> TAGS = new AtomicReferenceArray<>((Tags.MAX_KEY + 1) * VALUES);
+
+    static final Tag TAG_KIND = new Tag("kind", "yes");
+    private static final Tag[] KIND_TAGS = new Tag[Tags.kinds.length];
+
+    static {
+        for (int i = 0; i < KIND_TAGS.length; i++)
+            KIND_TAGS[i] = new Tag(Tags.kinds[i], "yes");
+    }
+
+    private TagTable() {
+    }
+
+    /**
+     * Returns canonical tag for built-in key and value indexes.
+     */
+    static Tag get(int key, int value) {
+        int i = key * VALUES + value;
+        Tag tag = TAGS.get(i);
+        if (tag == null) {
+            tag = create(Tags.keys[key], Tags.values[value]);
+            TAGS.lazySet(i, tag);
+        }
+        return tag;
+    }
+
+    static Tag getKindTag(int kind) {
+        return KIND_TAGS[kind];
+    }
+
+    /**
+     * Returns element classification flags implied by the tag.
+     */
+    static int getFlags(Tag tag) {
+        switch (tag.key) {
+            case "contour":
+                return ExtendedMapElement.FLAG_CONTOUR;
+            case "building":
+                return ExtendedMapElement.FLAG_BUILDING;
+            case "building:part":
+                return ExtendedMapElement.FLAG_BUILDING_PART;
+            case "tunnel":
+                return ExtendedMapElement.FLAG_TUNNEL;
+            case "railway":
+                return "platform".equals(tag.value) ? ExtendedMapElement.FLAG_PLATFORM : 0;
+            case "natural":
+                return "tree".equals(tag.value) ? ExtendedMapElement.FLAG_TREE : 0;
+            default:
+                return 0;
+        }
+    }
+
+    static Tag create(String key, String value) {
+        // FIXME filter out all variable tags
+        // might depend on theme though
+        if (Tag.KEY_NAME.equals(key)
+                || Tag.KEY_HOUSE_NUMBER.equals(key)
+                || Tag.KEY_REF.equals(key)
+                || Tag.KEY_ELE.equals(key))
+            return new Tag(key, value, false);
+        else
+            return new Tag(key, value, false, true);
+    }
+}
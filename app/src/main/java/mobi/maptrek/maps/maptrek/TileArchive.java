@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.maps.maptrek;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.oscim.tiling.TileKey;
+import org.oscim.tiling.source.BlobInputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_TILES_COLUMN;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_TILES_DATA;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_TILES_ROW;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.COLUMN_TILES_ZOOM_LEVEL;
+import static mobi.maptrek.maps.maptrek.MapTrekDatabaseHelper.TABLE_TILES;
+
+/**
+ * Read-only packed tile archive of a single native map area. Archive file is memory mapped,
+ * tile lookup is a binary search over sorted index followed by a copy from mapped memory.
+ * <p>
+ * File layout (big endian):
+ * <pre>
+ * int magic, int version, int count
+ * count * (long key, int offset, int length) - index sorted by key
+ * tile data
+ * </pre>
+ */
+class TileArchive {
+    private static final String SQL_GET_TILE_SIZES = "SELECT " + COLUMN_TILES_ZOOM_LEVEL + ", "
+            + COLUMN_TILES_COLUMN + ", " + COLUMN_TILES_ROW + ", length(" + COLUMN_TILES_DATA
+            + ") FROM " + TABLE_TILES + " ORDER BY " + COLUMN_TILES_ZOOM_LEVEL + ", "
+            + COLUMN_TILES_COLUMN + ", " + COLUMN_TILES_ROW;
+    private static final String SQL_GET_TILES = "SELECT " + COLUMN_TILES_DATA + " FROM "
+            + TABLE_TILES + " ORDER BY " + COLUMN_TILES_ZOOM_LEVEL + ", " + COLUMN_TILES_COLUMN
+            + ", " + COLUMN_TILES_ROW;
+
+    private static final int MAGIC = 0x4D544152; // MTAR
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 16;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mCount;
+
+    private TileArchive(MappedByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a tile archive");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported tile archive version: " + buffer.getInt(4));
+        mBuffer = buffer;
+        mCount = buffer.getInt(8);
+    }
+
+    static File getFile(File root, int x, int y) {
+        return new File(root, String.format(Locale.ENGLISH, "%d-%d.mtar", x, y));
+    }
+
+    static TileArchive open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // mapping remains valid after channel is closed
+            FileChannel channel = raf.getChannel();
+            return new TileArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads tile blob into provided stream. Can be called from multiple threads.
+     *
+     * @param key tile key as constructed by {@link TileKey#getKey(int, int, int)}
+     * @return false if tile is not present in archive
+     */
+    boolean read(long key, BlobInputStream stream) {
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = HEADER_SIZE + mid * ENTRY_SIZE;
+            long midKey = mBuffer.getLong(position);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                stream.readFrom(mBuffer, mBuffer.getInt(position + 8), mBuffer.getInt(position + 12));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Packs tiles table of provided map database into archive file. Caller is responsible for
+     * writing to a temporary file and moving it in place when import succeeds.
+     */
+    static void write(File file, SQLiteDatabase database) throws IOException {
+        int count;
+        long[] keys;
+        int[] lengths;
+        try (Cursor cursor = database.rawQuery(SQL_GET_TILE_SIZES, null)) {
+            count = cursor.getCount();
+            keys = new long[count];
+            lengths = new int[count];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                keys[i] = TileKey.getKey(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2));
+                lengths[i] = cursor.getInt(3);
+                i++;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            int offset = HEADER_SIZE + count * ENTRY_SIZE;
+            for (int i = 0; i < count; i++) {
+                out.writeLong(keys[i]);
+                out.writeInt(offset);
+                out.writeInt(lengths[i]);
+                offset += lengths[i];
+            }
+            try (Cursor cursor = database.rawQuery(SQL_GET_TILES, null)) {
+                while (cursor.moveToNext())
+                    out.write(cursor.getBlob(0));
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+    }
+}
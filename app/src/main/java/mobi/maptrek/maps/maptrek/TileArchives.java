@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.maps.maptrek;
+
+import android.support.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Lazily opened tile archives of native map areas.
+ */
+class TileArchives {
+    private static final Logger logger = LoggerFactory.getLogger(TileArchives.class);
+
+    private final File mRoot;
+    private final TileArchive[] mArchives = new TileArchive[128 * 128];
+    private final boolean[] mChecked = new boolean[128 * 128];
+
+    TileArchives(File root) {
+        mRoot = root;
+    }
+
+    /**
+     * Returns archive of specified map area or null if area is not archived.
+     */
+    @Nullable
+    synchronized TileArchive get(int x, int y) {
+        int i = (x << 7) + y;
+        if (!mChecked[i]) {
+            mChecked[i] = true;
+            File file = TileArchive.getFile(mRoot, x, y);
+            if (file.exists()) {
+                try {
+                    mArchives[i] = TileArchive.open(file);
+                } catch (IOException e) {
+                    logger.error("Failed to open " + file.getName(), e);
+                }
+            }
+        }
+        return mArchives[i];
+    }
+
+    /**
+     * Forgets opened archives so that they are reopened on next request.
+     */
+    synchronized void clear() {
+        Arrays.fill(mArchives, null);
+        Arrays.fill(mChecked, false);
+    }
+}
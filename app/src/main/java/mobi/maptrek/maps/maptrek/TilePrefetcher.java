@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.maps.maptrek;
+
+import android.os.Handler;
+
+import org.oscim.core.MercatorProjection;
+import org.oscim.tiling.TileKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Loads and decodes native tiles ahead of moving user so that they are already cached when
+ * they enter the viewport. Tiles are fetched in aligned 2x2 blocks along the line of travel
+ * on provided (low priority) handler. Only the latest request is processed, stale requests
+ * are dropped.
+ */
+public class TilePrefetcher {
+    private static final Logger logger = LoggerFactory.getLogger(TilePrefetcher.class);
+
+    private static final double EARTH_CIRCUMFERENCE = 40075016.686; // meters
+    private static final float MIN_SPEED = 2f; // m/s
+    private static final int LOOK_AHEAD_TIME = 60; // seconds
+    private static final double MAX_LOOK_AHEAD_DISTANCE = 5000d; // meters
+    private static final int MIN_ZOOM = 8;
+    private static final int MAX_ZOOM = 14;
+    private static final int BLOCK_MASK = 0x1;
+    // limits number of blocks fetched on each update so that prefetch does not flush the cache
+    private static final int MAX_BLOCKS = 8;
+    private static final int RECENT_BLOCKS = 64;
+
+    private final MapTrekTileSource mTileSource;
+    private final Handler mHandler;
+    private final long[] mPendingBlocks = new long[MAX_BLOCKS];
+    private final long[] mFetchBlocks = new long[MAX_BLOCKS];
+    private int mPendingCount;
+
+    // blocks that were recently requested, they are most probably still in cache
+    private final Map<Long, Boolean> mRecentBlocks = new LinkedHashMap<Long, Boolean>(RECENT_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > RECENT_BLOCKS;
+        }
+    };
+
+    private final Runnable mFetchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            int count;
+            synchronized (TilePrefetcher.this) {
+                count = mPendingCount;
+                System.arraycopy(mPendingBlocks, 0, mFetchBlocks, 0, count);
+                mPendingCount = 0;
+            }
+            for (int i = 0; i < count; i++) {
+                long key = mFetchBlocks[i];
+                int z = (int) (key >>> 56);
+                int x = (int) ((key >>> 28) & 0xFFFFFFF);
+                int y = (int) (key & 0xFFFFFFF);
+                mTileSource.fetchTiles(z, x, y, x | BLOCK_MASK, y | BLOCK_MASK);
+            }
+            if (count > 0)
+                logger.debug("Prefetched {} blocks", count);
+        }
+    };
+
+    public TilePrefetcher(MapTrekTileSource tileSource, Handler handler) {
+        mTileSource = tileSource;
+        mHandler = handler;
+    }
+
+    /**
+     * Schedules prefetch of tiles ahead of specified location. Does nothing if user is not
+     * moving fast enough.
+     *
+     * @param speed    speed in m/s
+     * @param bearing  direction of travel in degrees
+     * @param distance maximum look ahead distance in meters, e.g. distance to navigation target
+     * @param zoom     current map zoom level
+     */
+    public void prefetch(double lat, double lon, float speed, float bearing, double distance, int zoom) {
+        if (speed < MIN_SPEED || zoom < MIN_ZOOM)
+            return;
+        if (zoom > MAX_ZOOM)
+            zoom = MAX_ZOOM;
+
+        double meters = Math.min(Math.min(speed * LOOK_AHEAD_TIME, MAX_LOOK_AHEAD_DISTANCE), distance);
+        double scale = EARTH_CIRCUMFERENCE * Math.cos(Math.toRadians(lat));
+        double length = meters / scale;
+        double angle = Math.toRadians(bearing);
+        double dx = Math.sin(angle);
+        double dy = -Math.cos(angle);
+
+        double x = MercatorProjection.longitudeToX(lon);
+        double y = MercatorProjection.latitudeToY(lat);
+        int tiles = 1 << zoom;
+        double step = 1d / tiles;
+        int steps = (int) Math.ceil(length / step);
+
+        synchronized (this) {
+            // drop stale blocks that were not fetched yet so that they can be requested again
+            for (int i = 0; i < mPendingCount; i++)
+                mRecentBlocks.remove(mPendingBlocks[i]);
+            mPendingCount = 0;
+            for (int i = 1; i <= steps && mPendingCount < MAX_BLOCKS; i++) {
+                double d = Math.min(i * step, length);
+                int tileX = (int) ((x + dx * d) * tiles);
+                int tileY = (int) ((y + dy * d) * tiles);
+                if (tileX < 0 || tileY < 0 || tileX >= tiles || tileY >= tiles)
+                    break;
+                long key = TileKey.getKey(zoom, tileX & ~BLOCK_MASK, tileY & ~BLOCK_MASK);
+                if (mRecentBlocks.put(key, Boolean.TRUE) != null)
+                    continue;
+                mPendingBlocks[mPendingCount++] = key;
+            }
+            if (mPendingCount == 0)
+                return;
+        }
+        mHandler.removeCallbacks(mFetchRunnable);
+        mHandler.post(mFetchRunnable);
+    }
+
+    /**
+     * Drops scheduled requests, should be called when location updates stop.
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mFetchRunnable);
+        synchronized (this) {
+            mPendingCount = 0;
+            mRecentBlocks.clear();
+        }
+    }
+}
@@ -0,0 +1,661 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package mobi.maptrek.maps.online;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.Nullable;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.source.sqlite.MBTilesDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+import mobi.maptrek.util.ProgressListener;
+
+/**
+ * Online map tile cache shared by all online maps. Cache has global size budget, least recently
+ * used tiles are evicted when it is exceeded. Tiles expire after fixed period, expired tile is
+ * still served but is fetched again in background and is replaced if download succeeds.
+ * Downloaded tiles and access times are written to database in batches on background thread.
+ */
+public class OnlineTileCache {
+    private static final Logger logger = LoggerFactory.getLogger(OnlineTileCache.class);
+
+    public static final String DATABASE_NAME = "cache.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final long TILE_EXPIRATION = 30 * 24 * 3600 * 1000L; // 30 days
+    private static final int WRITE_BATCH_SIZE = 32;
+    private static final long WRITE_DELAY = 2000; // milliseconds
+    // evict a bit more than necessary so that eviction does not run after each write
+    private static final float EVICTION_FACTOR = 0.9f;
+
+    private static final String TABLE_TILES = "tiles";
+    private static final String COLUMN_MAP = "map";
+    private static final String COLUMN_ZOOM_LEVEL = "zoom_level";
+    private static final String COLUMN_TILE_COLUMN = "tile_column";
+    private static final String COLUMN_TILE_ROW = "tile_row";
+    private static final String COLUMN_TILE_DATA = "tile_data";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_EXPIRES = "expires";
+    private static final String COLUMN_ACCESSED = "accessed";
+
+    private static final String SQL_CREATE_TILES = "CREATE TABLE IF NOT EXISTS " + TABLE_TILES + " ("
+            + COLUMN_MAP + " TEXT NOT NULL, "
+            + COLUMN_ZOOM_LEVEL + " INTEGER NOT NULL, "
+            + COLUMN_TILE_COLUMN + " INTEGER NOT NULL, "
+            + COLUMN_TILE_ROW + " INTEGER NOT NULL, "
+            + COLUMN_TILE_DATA + " BLOB NOT NULL, "
+            + COLUMN_SIZE + " INTEGER NOT NULL, "
+            + COLUMN_EXPIRES + " INTEGER NOT NULL, "
+            + COLUMN_ACCESSED + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_MAP + ", " + COLUMN_ZOOM_LEVEL + ", " + COLUMN_TILE_COLUMN
+            + ", " + COLUMN_TILE_ROW + "))";
+    private static final String SQL_INDEX_TILES_ACCESSED = "CREATE INDEX IF NOT EXISTS tiles_"
+            + COLUMN_ACCESSED + " ON " + TABLE_TILES + " (" + COLUMN_ACCESSED + ")";
+
+    private static final String WHERE_TILE = COLUMN_MAP + " = ? AND " + COLUMN_ZOOM_LEVEL
+            + " = ? AND " + COLUMN_TILE_COLUMN + " = ? AND " + COLUMN_TILE_ROW + " = ?";
+    private static final String SQL_GET_TILE = "SELECT " + COLUMN_TILE_DATA + ", " + COLUMN_EXPIRES
+            + " FROM " + TABLE_TILES + " WHERE " + WHERE_TILE;
+    private static final String SQL_GET_EXPIRES = "SELECT " + COLUMN_EXPIRES + " FROM "
+            + TABLE_TILES + " WHERE " + WHERE_TILE;
+    private static final String SQL_PUT_TILE = "INSERT OR REPLACE INTO " + TABLE_TILES + " ("
+            + COLUMN_MAP + ", " + COLUMN_ZOOM_LEVEL + ", " + COLUMN_TILE_COLUMN + ", "
+            + COLUMN_TILE_ROW + ", " + COLUMN_TILE_DATA + ", " + COLUMN_SIZE + ", " + COLUMN_EXPIRES
+            + ", " + COLUMN_ACCESSED + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_UPDATE_ACCESSED = "UPDATE " + TABLE_TILES + " SET "
+            + COLUMN_ACCESSED + " = ? WHERE " + WHERE_TILE;
+    private static final String SQL_GET_SIZE = "SELECT TOTAL(" + COLUMN_SIZE + ") FROM " + TABLE_TILES;
+    private static final String SQL_SELECT_LRU = "SELECT rowid, " + COLUMN_SIZE + " FROM "
+            + TABLE_TILES + " ORDER BY " + COLUMN_ACCESSED;
+    private static final String SQL_REMOVE_TILE = "DELETE FROM " + TABLE_TILES + " WHERE rowid = ?";
+    private static final String SQL_GET_AREA_TILES = "SELECT " + COLUMN_TILE_COLUMN + ", "
+            + COLUMN_TILE_ROW + ", " + COLUMN_TILE_DATA + " FROM " + TABLE_TILES + " WHERE "
+            + COLUMN_MAP + " = ? AND " + COLUMN_ZOOM_LEVEL + " = ? AND " + COLUMN_TILE_COLUMN
+            + " BETWEEN ? AND ? AND " + COLUMN_TILE_ROW + " BETWEEN ? AND ?";
+    private static final String SQL_INSERT_MBTILES_TILE = "INSERT OR REPLACE INTO tiles"
+            + " (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)";
+    private static final String SQL_INSERT_MBTILES_METADATA = "INSERT OR REPLACE INTO metadata"
+            + " (name, value) VALUES (?, ?)";
+
+    private final Context mContext;
+    private final SQLiteDatabase mDatabase;
+    private final HandlerThread mWriterThread;
+    private final Handler mWriterHandler;
+    private final HandlerThread mRefreshThread;
+    private final Handler mRefreshHandler;
+    private final OkHttpClient mHttpClient = new OkHttpClient();
+    private final Object mPendingLock = new Object();
+    private LinkedHashMap<CacheTile, CacheTile> mPendingTiles = new LinkedHashMap<>();
+    private LinkedHashMap<CacheTile, CacheTile> mAccessedTiles = new LinkedHashMap<>();
+    private final HashSet<CacheTile> mRefreshedTiles = new HashSet<>();
+    private boolean mFlushScheduled;
+    private long mMaxSize;
+    private long mSize;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Opens cache database in specified directory, other files in that directory are removed
+     * as they belong to previous cache implementation.
+     *
+     * @param maxSize global cache size budget in bytes
+     */
+    public OnlineTileCache(Context context, File cacheDir, long maxSize) {
+        mContext = context;
+        mMaxSize = maxSize;
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().startsWith(DATABASE_NAME) && file.delete())
+                    logger.debug("Removed obsolete cache file {}", file.getName());
+            }
+        }
+        CacheDatabaseHelper helper = new CacheDatabaseHelper(context, new File(cacheDir, DATABASE_NAME));
+        helper.setWriteAheadLoggingEnabled(true);
+        mDatabase = helper.getWritableDatabase();
+        mWriterThread = new HandlerThread("OnlineTileCache");
+        mWriterThread.setPriority(Thread.MIN_PRIORITY);
+        mWriterThread.start();
+        mWriterHandler = new Handler(mWriterThread.getLooper());
+        mRefreshThread = new HandlerThread("OnlineTileRefresh");
+        mRefreshThread.setPriority(Thread.MIN_PRIORITY);
+        mRefreshThread.start();
+        mRefreshHandler = new Handler(mRefreshThread.getLooper());
+        mWriterHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (OnlineTileCache.this) {
+                    mSize = getSize();
+                }
+                logger.debug("Online cache size: {} bytes", mSize);
+                evict();
+            }
+        });
+    }
+
+    /**
+     * Returns cache view for specified online map that can be attached to its tile source.
+     * Tile source is used to fetch expired tiles again.
+     */
+    public ITileCache getMapCache(OnlineTileSource tileSource) {
+        return new MapCache(tileSource);
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Downloads tiles of specified area and zoom levels that are not cached or are expired.
+     * Should be called on background thread, can be cancelled by interrupting the thread.
+     * Tile source is opened if necessary and is left open.
+     *
+     * @return number of downloaded tiles
+     */
+    public int seed(OnlineTileSource tileSource, BoundingBox area, int minZoom, int maxZoom, @Nullable ProgressListener progressListener) {
+        if (!tileSource.open().isSuccess())
+            return 0;
+        String map = tileSource.getCode();
+        int total = 0;
+        for (int z = minZoom; z <= maxZoom; z++) {
+            int[] range = getTileRange(area, z);
+            total += (range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+        }
+        if (progressListener != null)
+            progressListener.onProgressStarted(total);
+
+        long now = System.currentTimeMillis();
+        int progress = 0;
+        int downloaded = 0;
+        for (int z = minZoom; z <= maxZoom; z++) {
+            int[] range = getTileRange(area, z);
+            for (int x = range[0]; x <= range[2]; x++) {
+                for (int y = range[1]; y <= range[3]; y++) {
+                    if (Thread.currentThread().isInterrupted())
+                        return downloaded;
+                    progress++;
+                    if (getExpires(new CacheTile(map, z, x, y, null)) <= now && download(tileSource, z, x, y))
+                        downloaded++;
+                    if (progressListener != null)
+                        progressListener.onProgressChanged(progress);
+                }
+            }
+        }
+        if (progressListener != null)
+            progressListener.onProgressFinished();
+        return downloaded;
+    }
+
+    /**
+     * Exports cached tiles of specified online map, area and zoom levels to MBTiles file that
+     * can be opened as offline map.
+     *
+     * @return number of exported tiles
+     */
+    public int export(String map, String name, BoundingBox area, int minZoom, int maxZoom, File file) {
+        flush();
+        int count = 0;
+        String format = null;
+        MBTilesDatabase.MBTilesDatabaseHelper helper = new MBTilesDatabase.MBTilesDatabaseHelper(mContext, file);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        try {
+            database.beginTransaction();
+            SQLiteStatement statement = database.compileStatement(SQL_INSERT_MBTILES_TILE);
+            for (int z = minZoom; z <= maxZoom; z++) {
+                int[] range = getTileRange(area, z);
+                String[] args = {map, String.valueOf(z), String.valueOf(range[0]),
+                        String.valueOf(range[2]), String.valueOf(range[1]), String.valueOf(range[3])};
+                try (Cursor c = mDatabase.rawQuery(SQL_GET_AREA_TILES, args)) {
+                    while (c.moveToNext()) {
+                        byte[] data = c.getBlob(2);
+                        if (format == null)
+                            format = getFormat(data);
+                        statement.clearBindings();
+                        statement.bindLong(1, z);
+                        statement.bindLong(2, c.getInt(0));
+                        statement.bindLong(3, c.getInt(1));
+                        statement.bindBlob(4, data);
+                        statement.executeInsert();
+                        count++;
+                    }
+                }
+            }
+            statement.close();
+            statement = database.compileStatement(SQL_INSERT_MBTILES_METADATA);
+            putMetadata(statement, "name", name);
+            putMetadata(statement, "type", "baselayer");
+            putMetadata(statement, "format", format != null ? format : "png");
+            putMetadata(statement, "minzoom", String.valueOf(minZoom));
+            putMetadata(statement, "maxzoom", String.valueOf(maxZoom));
+            putMetadata(statement, "bounds", String.format(Locale.ENGLISH, "%f,%f,%f,%f",
+                    area.getMinLongitude(), area.getMinLatitude(), area.getMaxLongitude(), area.getMaxLatitude()));
+            putMetadata(statement, "tile_row_type", "xyz");
+            statement.close();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            helper.close();
+        }
+        logger.debug("Exported {} tiles of {}", count, map);
+        return count;
+    }
+
+    /**
+     * Writes pending tiles and access times to database and evicts tiles if cache size
+     * exceeds budget. Is called on writer thread but can be called from any background thread.
+     */
+    public synchronized void flush() {
+        LinkedHashMap<CacheTile, CacheTile> tiles;
+        LinkedHashMap<CacheTile, CacheTile> accessed;
+        synchronized (mPendingLock) {
+            tiles = mPendingTiles;
+            accessed = mAccessedTiles;
+            mPendingTiles = new LinkedHashMap<>();
+            mAccessedTiles = new LinkedHashMap<>();
+            mFlushScheduled = false;
+        }
+        if (tiles.isEmpty() && accessed.isEmpty())
+            return;
+        long now = System.currentTimeMillis();
+        mDatabase.beginTransaction();
+        try {
+            SQLiteStatement statement = mDatabase.compileStatement(SQL_PUT_TILE);
+            for (CacheTile tile : tiles.values()) {
+                statement.clearBindings();
+                statement.bindString(1, tile.map);
+                statement.bindLong(2, tile.zoom);
+                statement.bindLong(3, tile.x);
+                statement.bindLong(4, tile.y);
+                statement.bindBlob(5, tile.data);
+                statement.bindLong(6, tile.data.length);
+                statement.bindLong(7, tile.expires);
+                statement.bindLong(8, now);
+                statement.executeInsert();
+                // size is overestimated for replaced tiles, it is recalculated on eviction
+                mSize += tile.data.length;
+            }
+            statement.close();
+            statement = mDatabase.compileStatement(SQL_UPDATE_ACCESSED);
+            for (CacheTile tile : accessed.values()) {
+                if (tiles.containsKey(tile))
+                    continue;
+                statement.clearBindings();
+                statement.bindLong(1, now);
+                statement.bindString(2, tile.map);
+                statement.bindLong(3, tile.zoom);
+                statement.bindLong(4, tile.x);
+                statement.bindLong(5, tile.y);
+                statement.executeUpdateDelete();
+            }
+            statement.close();
+            mDatabase.setTransactionSuccessful();
+        } catch (Exception e) {
+            logger.error("Failed to write tiles", e);
+        } finally {
+            mDatabase.endTransaction();
+        }
+        evict();
+    }
+
+    private synchronized void evict() {
+        if (mSize <= mMaxSize)
+            return;
+        mSize = getSize();
+        if (mSize <= mMaxSize)
+            return;
+        long excess = mSize - (long) (mMaxSize * EVICTION_FACTOR);
+        ArrayList<Long> rowIds = new ArrayList<>();
+        try (Cursor c = mDatabase.rawQuery(SQL_SELECT_LRU, null)) {
+            while (excess > 0 && c.moveToNext()) {
+                rowIds.add(c.getLong(0));
+                long size = c.getLong(1);
+                excess -= size;
+                mSize -= size;
+            }
+        }
+        mDatabase.beginTransaction();
+        try {
+            SQLiteStatement statement = mDatabase.compileStatement(SQL_REMOVE_TILE);
+            for (long rowId : rowIds) {
+                statement.bindLong(1, rowId);
+                statement.executeUpdateDelete();
+            }
+            statement.close();
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        logger.debug("Evicted {} tiles", rowIds.size());
+    }
+
+    private long getSize() {
+        SQLiteStatement statement = mDatabase.compileStatement(SQL_GET_SIZE);
+        long size = statement.simpleQueryForLong();
+        statement.close();
+        return size;
+    }
+
+    private long getExpires(CacheTile key) {
+        synchronized (mPendingLock) {
+            CacheTile tile = mPendingTiles.get(key);
+            if (tile != null)
+                return tile.expires;
+        }
+        String[] args = {key.map, String.valueOf(key.zoom), String.valueOf(key.x), String.valueOf(key.y)};
+        try (Cursor c = mDatabase.rawQuery(SQL_GET_EXPIRES, args)) {
+            if (c.moveToFirst())
+                return c.getLong(0);
+        }
+        return 0L;
+    }
+
+    @Nullable
+    private byte[] get(OnlineTileSource tileSource, CacheTile key) {
+        synchronized (mPendingLock) {
+            CacheTile tile = mPendingTiles.get(key);
+            if (tile != null)
+                return tile.data;
+        }
+        String[] args = {key.map, String.valueOf(key.zoom), String.valueOf(key.x), String.valueOf(key.y)};
+        try (Cursor c = mDatabase.rawQuery(SQL_GET_TILE, args)) {
+            if (!c.moveToFirst())
+                return null;
+            byte[] data = c.getBlob(0);
+            // expired tile is served until it is replaced, it is kept if download fails
+            if (c.getLong(1) < System.currentTimeMillis())
+                refresh(tileSource, key);
+            synchronized (mPendingLock) {
+                mAccessedTiles.put(key, key);
+                scheduleFlush();
+            }
+            return data;
+        } catch (Exception e) {
+            logger.error("Failed to read tile", e);
+        }
+        return null;
+    }
+
+    /**
+     * Fetches tile again on background thread, tile is refreshed only once at a time.
+     */
+    private void refresh(final OnlineTileSource tileSource, final CacheTile key) {
+        synchronized (mPendingLock) {
+            if (!mRefreshedTiles.add(key))
+                return;
+        }
+        mRefreshHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    download(tileSource, key.zoom, key.x, key.y);
+                } finally {
+                    synchronized (mPendingLock) {
+                        mRefreshedTiles.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Downloads tile and puts it to cache.
+     *
+     * @return true if tile was downloaded
+     */
+    private boolean download(OnlineTileSource tileSource, int zoom, int x, int y) {
+        String url = tileSource.getTileUrl(new Tile(x, y, (byte) zoom));
+        if (url == null)
+            return false;
+        byte[] data = fetch(url);
+        if (data == null)
+            return false;
+        put(new CacheTile(tileSource.getCode(), zoom, x, y, data));
+        return true;
+    }
+
+    /**
+     * Fetches tile data from specified url.
+     *
+     * @return tile data or null if it failed to fetch
+     */
+    @Nullable
+    byte[] fetch(String url) {
+        try {
+            Response response = mHttpClient.newCall(new Request.Builder().url(url).build()).execute();
+            if (response.isSuccessful())
+                return response.body().bytes();
+            response.body().close();
+            logger.warn("Failed to fetch {}: {}", url, response.code());
+        } catch (IOException e) {
+            logger.warn("Failed to fetch {}: {}", url, e.getMessage());
+        }
+        return null;
+    }
+
+    private void put(CacheTile tile) {
+        synchronized (mPendingLock) {
+            mPendingTiles.put(tile, tile);
+            if (mPendingTiles.size() >= WRITE_BATCH_SIZE) {
+                mWriterHandler.removeCallbacks(mFlushRunnable);
+                mWriterHandler.post(mFlushRunnable);
+                mFlushScheduled = true;
+            } else {
+                scheduleFlush();
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (mFlushScheduled)
+            return;
+        mWriterHandler.postDelayed(mFlushRunnable, WRITE_DELAY);
+        mFlushScheduled = true;
+    }
+
+    /**
+     * Returns range of tiles covering specified area.
+     *
+     * @return minimum x, minimum y, maximum x and maximum y of tiles
+     */
+    static int[] getTileRange(BoundingBox area, int zoom) {
+        int max = (1 << zoom) - 1;
+        double scale = 1 << zoom;
+        int minX = (int) (MercatorProjection.longitudeToX(area.getMinLongitude()) * scale);
+        int minY = (int) (MercatorProjection.latitudeToY(area.getMaxLatitude()) * scale);
+        int maxX = (int) (MercatorProjection.longitudeToX(area.getMaxLongitude()) * scale);
+        int maxY = (int) (MercatorProjection.latitudeToY(area.getMinLatitude()) * scale);
+        return new int[]{Math.max(0, minX), Math.max(0, minY), Math.min(max, maxX), Math.min(max, maxY)};
+    }
+
+    private static String getFormat(byte[] data) {
+        if (data.length > 1 && (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xd8)
+            return "jpg";
+        return "png";
+    }
+
+    private static void putMetadata(SQLiteStatement statement, String name, String value) {
+        statement.bindString(1, name);
+        statement.bindString(2, value);
+        statement.executeInsert();
+    }
+
+    private class MapCache implements ITileCache {
+        private final OnlineTileSource mTileSource;
+        private final String mMap;
+
+        MapCache(OnlineTileSource tileSource) {
+            mTileSource = tileSource;
+            mMap = tileSource.getCode();
+        }
+
+        @Override
+        public TileWriter writeTile(Tile tile) {
+            return new CacheTileWriter(mMap, tile);
+        }
+
+        @Override
+        public TileReader getTile(Tile tile) {
+            byte[] data = get(mTileSource, new CacheTile(mMap, tile.zoomLevel, tile.tileX, tile.tileY, null));
+            if (data == null)
+                return null;
+            return new CacheTileReader(tile, data);
+        }
+
+        /**
+         * Sets global cache size budget.
+         */
+        @Override
+        public void setCacheSize(long size) {
+            setMaxSize(size);
+        }
+    }
+
+    private class CacheTileWriter implements ITileCache.TileWriter {
+        private final String mMap;
+        private final Tile mTile;
+        private final ByteArrayOutputStream mOutputStream;
+
+        CacheTileWriter(String map, Tile tile) {
+            mMap = map;
+            mTile = tile;
+            mOutputStream = new ByteArrayOutputStream(32 * 1024);
+        }
+
+        @Override
+        public Tile getTile() {
+            return mTile;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return mOutputStream;
+        }
+
+        @Override
+        public void complete(boolean success) {
+            if (success && mOutputStream.size() > 0)
+                put(new CacheTile(mMap, mTile.zoomLevel, mTile.tileX, mTile.tileY, mOutputStream.toByteArray()));
+        }
+    }
+
+    private static class CacheTileReader implements ITileCache.TileReader {
+        private final Tile mTile;
+        private final InputStream mInputStream;
+
+        CacheTileReader(Tile tile, byte[] data) {
+            mTile = tile;
+            mInputStream = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public Tile getTile() {
+            return mTile;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return mInputStream;
+        }
+    }
+
+    /**
+     * Cached tile, is also used as a key of pending writes.
+     */
+    private static class CacheTile {
+        final String map;
+        final int zoom;
+        final int x;
+        final int y;
+        final byte[] data;
+        final long expires;
+
+        CacheTile(String map, int zoom, int x, int y, byte[] data) {
+            this.map = map;
+            this.zoom = zoom;
+            this.x = x;
+            this.y = y;
+            this.data = data;
+            this.expires = System.currentTimeMillis() + TILE_EXPIRATION;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof CacheTile))
+                return false;
+            CacheTile other = (CacheTile) o;
+            return zoom == other.zoom && x == other.x && y == other.y && map.equals(other.map);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = map.hashCode();
+            result = 31 * result + zoom;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            return result;
+        }
+    }
+
+    private static class CacheDatabaseHelper extends SQLiteOpenHelper {
+        CacheDatabaseHelper(Context context, File file) {
+            super(context, file.getAbsolutePath(), null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL(SQL_CREATE_TILES);
+            db.execSQL(SQL_INDEX_TILES_ACCESSED);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+    }
+}
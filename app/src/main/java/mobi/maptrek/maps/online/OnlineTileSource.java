@@ -103,6 +103,8 @@ public class OnlineTileSource extends BitmapTileSource {
 
     @Override
     public OpenResult open() {
+        if (mProviderClient != null)
+            return OpenResult.SUCCESS;
         mProviderClient = mContext.getContentResolver().acquireContentProviderClient(Uri.parse(mUri));
         if (mProviderClient != null)
             return OpenResult.SUCCESS;
@@ -140,4 +142,8 @@ public class OnlineTileSource extends BitmapTileSource {
     public String getName() {
         return mName;
     }
+
+    public String getCode() {
+        return mCode;
+    }
 }
@@ -22,12 +22,11 @@ import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
 import android.support.annotation.NonNull;
 
-import org.oscim.android.cache.TileCache;
-
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import mobi.maptrek.MapTrek;
+
 public class TileSourceFactory {
     @NonNull
     public static List<OnlineTileSource> fromPlugin(Context context, PackageManager packageManager, ResolveInfo provider) {
@@ -44,8 +43,7 @@ public class TileSourceFactory {
             if (maps == null)
                 return sources;
 
-            File cacheDir = new File(context.getExternalCacheDir(), "online");
-            boolean useCache = cacheDir.mkdir() || cacheDir.isDirectory();
+            OnlineTileCache cache = MapTrek.getApplication().getOnlineTileCache();
 
             for (String map : maps) {
                 String name = null;
@@ -77,10 +75,8 @@ public class TileSourceFactory {
                     builder.zoomMax(resources.getInteger(id));
 
                 OnlineTileSource source = builder.build();
-                if (useCache) {
-                    TileCache cache = new TileCache(context, cacheDir.getAbsolutePath(), map);
-                    source.setCache(cache);
-                }
+                if (cache != null)
+                    source.setCache(cache.getMapCache(source));
                 sources.add(source);
             }
         } catch (Resources.NotFoundException | PackageManager.NameNotFoundException e) {
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.oscim.core;
+
+/**
+ * Helpers for copying geometry buffers filled by decoders. Decoders reuse buffers and do not
+ * always terminate index, so used lengths are derived from geometry type.
+ */
+public final class GeometryBuffers {
+    private GeometryBuffers() {
+    }
+
+    /**
+     * Returns number of used index entries.
+     */
+    public static int getIndexLength(GeometryBuffer geom) {
+        // point index has single entry with number of coordinates
+        if (geom.type == GeometryBuffer.GeometryType.POINT)
+            return geom.index.length > 0 ? 1 : 0;
+        int length = 0;
+        while (length < geom.index.length && geom.index[length] >= 0)
+            length++;
+        return length;
+    }
+
+    /**
+     * Returns number of used point coordinates.
+     */
+    public static int getPointsLength(GeometryBuffer geom) {
+        // mesh index holds vertex indices, not coordinate counts
+        if (geom.type == GeometryBuffer.GeometryType.TRIS || geom.type == GeometryBuffer.GeometryType.POINT)
+            return geom.pointPos;
+        int length = 0;
+        for (int i = 0, n = geom.index.length; i < n && geom.index[i] >= 0; i++)
+            length += geom.index[i];
+        return length;
+    }
+}
@@ -17,14 +17,31 @@
 package org.oscim.tiling;
 
 import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffers;
 import org.oscim.core.MapElement;
 import org.oscim.layers.tile.MapTile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Combines map file source with URL source which is used as a fallback. URL source is queried
+ * in parallel with map file source on separate thread and its result is used only if map file
+ * has no data for requested tile, so slow provider does not delay local data.
+ */
 public class CombinedTileSource extends TileSource {
+    private static final Logger logger = LoggerFactory.getLogger(CombinedTileSource.class);
+
     private static final byte MAP_FILE_MIN_ZOOM = 8;
 
     private TileSource mMapFileSource;
     private TileSource mUrlSource;
+    private ExecutorService mUrlExecutor;
 
     public CombinedTileSource(TileSource mapFileSource, TileSource urlSource) {
         super(0, 17);
@@ -34,11 +51,13 @@ public class CombinedTileSource extends TileSource {
 
     @Override
     public ITileDataSource getDataSource() {
-        return new CombinedDataSource(mMapFileSource.getDataSource(), mUrlSource.getDataSource());
+        return new CombinedDataSource(mMapFileSource.getDataSource(), mUrlSource.getDataSource(), mUrlSource.getDataSource());
     }
 
     @Override
     public OpenResult open() {
+        if (mUrlExecutor == null)
+            mUrlExecutor = Executors.newCachedThreadPool();
         mMapFileSource.open();
         return mUrlSource.open();
     }
@@ -47,41 +66,133 @@ public class CombinedTileSource extends TileSource {
     public void close() {
         mMapFileSource.close();
         mUrlSource.close();
+        if (mUrlExecutor != null) {
+            mUrlExecutor.shutdownNow();
+            mUrlExecutor = null;
+        }
     }
 
+    /**
+     * Uses two URL data sources: one is queried in parallel on executor thread, another is used
+     * on loader thread when parallel query is not available, so that loader never waits for
+     * cancelled parallel query. All statistics are updated on loader thread.
+     */
     class CombinedDataSource implements ITileDataSource {
         private ITileDataSource mMapFileDataSource;
         private ITileDataSource mUrlDataSource;
+        private ITileDataSource mFallbackDataSource;
+        private Future<?> mUrlFuture;
+        private long mMapFileCount;
+        private long mMapFileTime;
+        private long mUrlCount;
+        private long mUrlTime;
 
-        public CombinedDataSource(ITileDataSource mapFileDataSource, ITileDataSource urlDataSource) {
+        public CombinedDataSource(ITileDataSource mapFileDataSource, ITileDataSource urlDataSource, ITileDataSource fallbackDataSource) {
             mMapFileDataSource = mapFileDataSource;
             mUrlDataSource = urlDataSource;
+            mFallbackDataSource = fallbackDataSource;
         }
 
         @Override
         public void query(MapTile tile, ITileDataSink mapDataSink) {
             if (tile.zoomLevel < MAP_FILE_MIN_ZOOM) {
-                mUrlDataSource.query(tile, mapDataSink);
+                queryUrl(tile, mapDataSink);
+                return;
+            }
+
+            // URL data source serves one query at a time, if previous cancelled query is still
+            // running fallback data source is queried after map file
+            UrlQuery urlQuery = null;
+            if ((mUrlFuture == null || mUrlFuture.isDone()) && mUrlExecutor != null) {
+                urlQuery = new UrlQuery(tile);
+                mUrlFuture = mUrlExecutor.submit(urlQuery);
+            }
+
+            ProxyTileDataSink proxyDataSink = new ProxyTileDataSink(mapDataSink);
+            long start = System.nanoTime();
+            mMapFileDataSource.query(tile, proxyDataSink);
+            mMapFileCount++;
+            mMapFileTime += System.nanoTime() - start;
+
+            if (proxyDataSink.result == QueryResult.SUCCESS) {
+                // buffered URL data is not referenced anymore and is dropped with cancelled query
+                if (urlQuery != null)
+                    mUrlDataSource.cancel();
+            } else if (urlQuery != null && waitForUrlQuery()) {
+                // URL results are passed after map file results
+                mUrlCount++;
+                mUrlTime += urlQuery.time;
+                urlQuery.sink.replay(proxyDataSink);
             } else {
-                ProxyTileDataSink proxyDataSink = new ProxyTileDataSink(mapDataSink);
-                mMapFileDataSource.query(tile, proxyDataSink);
-                if (proxyDataSink.result != QueryResult.SUCCESS)
-                    mUrlDataSource.query(tile, proxyDataSink);
+                queryUrl(tile, proxyDataSink);
+            }
 
-                mapDataSink.completed(proxyDataSink.result);
+            mapDataSink.completed(proxyDataSink.result);
+        }
+
+        private void queryUrl(MapTile tile, ITileDataSink sink) {
+            long start = System.nanoTime();
+            mFallbackDataSource.query(tile, sink);
+            mUrlCount++;
+            mUrlTime += System.nanoTime() - start;
+        }
+
+        /**
+         * Waits for parallel URL query to complete.
+         *
+         * @return true if query completed normally
+         */
+        private boolean waitForUrlQuery() {
+            try {
+                mUrlFuture.get();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error("URL query error", e.getCause());
             }
+            return false;
         }
 
         @Override
         public void dispose() {
+            if (mUrlFuture != null)
+                mUrlFuture.cancel(true);
             mMapFileDataSource.dispose();
             mUrlDataSource.dispose();
+            mFallbackDataSource.dispose();
+            if (mMapFileCount > 0)
+                logger.debug("Map file: {} tiles, {} us per tile", mMapFileCount, mMapFileTime / mMapFileCount / 1000);
+            if (mUrlCount > 0)
+                logger.debug("URL: {} tiles, {} us per tile", mUrlCount, mUrlTime / mUrlCount / 1000);
         }
 
         @Override
         public void cancel() {
             mMapFileDataSource.cancel();
             mUrlDataSource.cancel();
+            mFallbackDataSource.cancel();
+        }
+
+        /**
+         * Queries URL data source on executor thread. Query owns its buffer and timing, they
+         * are read by loader thread only after query is completed.
+         */
+        private class UrlQuery implements Runnable {
+            private final MapTile mTile;
+            final BufferedTileDataSink sink = new BufferedTileDataSink();
+            long time;
+
+            UrlQuery(MapTile tile) {
+                mTile = tile;
+            }
+
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                mUrlDataSource.query(mTile, sink);
+                time = System.nanoTime() - start;
+            }
         }
     }
 
@@ -113,4 +224,59 @@ public class CombinedTileSource extends TileSource {
             this.result = result;
         }
     }
+
+    /**
+     * Keeps copies of received elements so that they can be passed to map later.
+     */
+    static class BufferedTileDataSink implements ITileDataSink {
+        private final ArrayList<MapElement> mElements = new ArrayList<>();
+        private Bitmap mBitmap;
+        private QueryResult mResult;
+
+        @Override
+        public void process(MapElement element) {
+            mElements.add(copy(element));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+            mBitmap = bitmap;
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            mResult = result;
+        }
+
+        void replay(ITileDataSink sink) {
+            for (MapElement element : mElements)
+                sink.process(element);
+            if (mBitmap != null)
+                sink.setTileImage(mBitmap);
+            sink.completed(mResult != null ? mResult : QueryResult.FAILED);
+            clear();
+        }
+
+        void clear() {
+            mElements.clear();
+            mBitmap = null;
+            mResult = null;
+        }
+
+        private static MapElement copy(MapElement element) {
+            int indexLength = GeometryBuffers.getIndexLength(element);
+            int pointsLength = GeometryBuffers.getPointsLength(element);
+            MapElement copy = new MapElement((pointsLength + 1) >> 1, indexLength);
+            System.arraycopy(element.points, 0, copy.points, 0, pointsLength);
+            System.arraycopy(element.index, 0, copy.index, 0, indexLength);
+            copy.pointPos = pointsLength;
+            copy.type = element.type;
+            copy.layer = element.layer;
+            for (int i = 0, n = element.tags.size(); i < n; i++)
+                copy.tags.add(element.tags.get(i));
+            if (element.labelPosition != null)
+                copy.setLabelPosition(element.labelPosition.x, element.labelPosition.y);
+            return copy;
+        }
+    }
 }
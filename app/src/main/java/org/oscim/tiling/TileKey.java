@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.oscim.tiling;
+
+/**
+ * Packs tile coordinates into single long key used by tile caches and archives.
+ */
+public final class TileKey {
+    private TileKey() {
+    }
+
+    public static long getKey(int z, int x, int y) {
+        return ((long) z << 56) | ((long) x << 28) | (long) y;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.oscim.tiling.source;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream over tile blob that is reused for subsequent tiles. Each tile loader thread
+ * owns its own data source, so keeping one stream per data source saves allocation of stream
+ * object on every query. Blob passed to {@link #set(byte[])} is not copied but cursor blobs are
+ * already copies made by {@code getBlob}. Only {@link #readFrom(ByteBuffer, int, int)} fills
+ * internal buffer that is reused between tiles.
+ */
+public class BlobInputStream extends ByteArrayInputStream {
+    private static final byte[] EMPTY = new byte[0];
+    private static final int INITIAL_BUFFER_SIZE = 1 << 15; // 32kb
+
+    private byte[] mBuffer;
+
+    public BlobInputStream() {
+        super(EMPTY);
+    }
+
+    /**
+     * Points stream to the beginning of provided blob.
+     */
+    public BlobInputStream set(byte[] blob) {
+        return set(blob, blob.length);
+    }
+
+    /**
+     * Points stream to the beginning of provided buffer limiting it to specified length.
+     */
+    public BlobInputStream set(byte[] buffer, int length) {
+        buf = buffer;
+        count = length;
+        pos = 0;
+        mark = 0;
+        return this;
+    }
+
+    /**
+     * Copies blob from specified region of provided byte buffer into internal buffer and points
+     * stream to it. Position of provided buffer is not changed.
+     */
+    public BlobInputStream readFrom(ByteBuffer buffer, int offset, int length) {
+        ensureBufferSize(length);
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(mBuffer, 0, length);
+        return set(mBuffer, length);
+    }
+
+    private void ensureBufferSize(int size) {
+        if (mBuffer == null)
+            mBuffer = new byte[Math.max(size, INITIAL_BUFFER_SIZE)];
+        else if (mBuffer.length < size)
+            mBuffer = new byte[size];
+    }
+
+    /**
+     * Drops reference to the blob so that it can be garbage collected. Internal buffer is kept.
+     */
+    public void release() {
+        set(EMPTY, 0);
+    }
+}
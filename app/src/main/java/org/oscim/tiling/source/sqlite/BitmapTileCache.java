@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Andrey Novikov
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.oscim.tiling.source.sqlite;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import org.oscim.android.canvas.AndroidBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory bounded LRU cache of decoded bitmap tiles. Cached bitmaps are shared with map: every
+ * tile gets its own reference that is released when map recycles tile bitmap. Bitmap memory is
+ * reused for decoding of following tiles only when it is evicted from cache and is not
+ * referenced by any tile. Evicted bitmaps are kept in a small pool for that purpose.
+ */
+class BitmapTileCache {
+    private static final Logger logger = LoggerFactory.getLogger(BitmapTileCache.class);
+
+    private static final int POOL_SIZE = 4;
+
+    private final LinkedHashMap<Long, CachedBitmap> mCache;
+    private final ArrayDeque<Bitmap> mPool;
+    private final long mMaxSize;
+    private long mSize;
+
+    BitmapTileCache(long maxSize) {
+        mCache = new LinkedHashMap<>(64, 0.75f, true);
+        mPool = new ArrayDeque<>(POOL_SIZE);
+        mMaxSize = maxSize;
+        mSize = 0L;
+    }
+
+    /**
+     * Returns new reference to cached tile bitmap or null if tile is not cached.
+     */
+    org.oscim.backend.canvas.Bitmap get(long key) {
+        synchronized (mCache) {
+            CachedBitmap cached = mCache.get(key);
+            if (cached == null)
+                return null;
+            return new TileBitmap(cached);
+        }
+    }
+
+    /**
+     * Decodes tile bitmap reusing pooled bitmap memory if possible and puts it to cache.
+     *
+     * @return new reference to decoded bitmap or null if bitmap can not be decoded
+     */
+    org.oscim.backend.canvas.Bitmap decode(long key, InputStream is) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        synchronized (mCache) {
+            options.inBitmap = mPool.pollFirst();
+        }
+        Bitmap bitmap;
+        is.mark(Integer.MAX_VALUE);
+        try {
+            bitmap = BitmapFactory.decodeStream(is, null, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null)
+                return null;
+            // pooled bitmap is not suitable for this tile
+            logger.debug("Failed to reuse bitmap: {}", e.getMessage());
+            options.inBitmap.recycle();
+            options.inBitmap = null;
+            try {
+                is.reset();
+            } catch (IOException ignore) {
+                return null;
+            }
+            bitmap = BitmapFactory.decodeStream(is, null, options);
+        }
+        if (bitmap == null)
+            return null;
+        CachedBitmap cached = new CachedBitmap(bitmap);
+        synchronized (mCache) {
+            TileBitmap tileBitmap = new TileBitmap(cached);
+            put(key, cached);
+            return tileBitmap;
+        }
+    }
+
+    private void put(long key, CachedBitmap cached) {
+        CachedBitmap previous = mCache.put(key, cached);
+        if (previous != null) {
+            mSize -= previous.size;
+            release(previous);
+        }
+        mSize += cached.size;
+        Iterator<Map.Entry<Long, CachedBitmap>> iterator = mCache.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            CachedBitmap eldest = iterator.next().getValue();
+            mSize -= eldest.size;
+            iterator.remove();
+            release(eldest);
+        }
+    }
+
+    /**
+     * Releases one reference to bitmap, bitmap memory is reused or freed when it is not
+     * referenced anymore. Should be called with cache lock held.
+     */
+    private void release(CachedBitmap cached) {
+        cached.references--;
+        if (cached.references > 0)
+            return;
+        if (mPool.size() < POOL_SIZE)
+            mPool.addLast(cached.bitmap);
+        else
+            cached.bitmap.recycle();
+    }
+
+    /**
+     * Releases cache references, bitmaps that are still used by map are freed when their
+     * tiles are released.
+     */
+    void clear() {
+        synchronized (mCache) {
+            for (CachedBitmap cached : mCache.values()) {
+                if (--cached.references == 0)
+                    cached.bitmap.recycle();
+            }
+            for (Bitmap bitmap : mPool)
+                bitmap.recycle();
+            mCache.clear();
+            mPool.clear();
+            mSize = 0L;
+        }
+    }
+
+    private static class CachedBitmap {
+        final Bitmap bitmap;
+        final long size;
+        // cache holds its own reference while bitmap is cached
+        int references = 1;
+
+        CachedBitmap(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.size = bitmap.getAllocationByteCount();
+        }
+    }
+
+    /**
+     * Tile reference to cached bitmap. Map recycles tile bitmap when tile is released, this
+     * only releases the reference.
+     */
+    private class TileBitmap extends AndroidBitmap {
+        private CachedBitmap mCached;
+
+        /**
+         * Should be called with cache lock held.
+         */
+        TileBitmap(CachedBitmap cached) {
+            super(cached.bitmap);
+            mCached = cached;
+            cached.references++;
+        }
+
+        @Override
+        public void recycle() {
+            synchronized (mCache) {
+                if (mCached == null)
+                    return;
+                release(mCached);
+                mCached = null;
+            }
+        }
+    }
+}
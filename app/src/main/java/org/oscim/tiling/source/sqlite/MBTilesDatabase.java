@@ -50,15 +50,17 @@ public class MBTilesDatabase extends SQLiteTileDatabase {
     }
 
     @Override
-    protected String getTileQuery(String[] args) {
-        if (tmsSchema) {
-            int zoom = Integer.valueOf(args[2]);
-            int y = (1 << zoom) - Integer.valueOf(args[1]) - 1;
-            args[1] = String.valueOf(y);
-        }
+    protected String getTileQuery() {
         return SQL_GET_IMAGE;
     }
 
+    @Override
+    protected int getTileRow(int y, int zoom) {
+        if (tmsSchema)
+            return (1 << zoom) - y - 1;
+        return y;
+    }
+
     static TileSource.OpenResult initialize(SQLiteTileSource tileSource, SQLiteDatabase database) {
         try {
             int minZoom = (int) database.compileStatement(SQL_GET_MIN_ZOOM).simpleQueryForLong();
@@ -46,7 +46,7 @@ public class RMapsDatabase extends SQLiteTileDatabase {
     }
 
     @Override
-    protected String getTileQuery(String[] args) {
+    protected String getTileQuery() {
         return SQL_GET_IMAGE;
     }
 
@@ -18,18 +18,22 @@ package org.oscim.tiling.source.sqlite;
 
 import android.database.Cursor;
 import android.database.CursorIndexOutOfBoundsException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
 
+import org.oscim.backend.canvas.Bitmap;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileKey;
+import org.oscim.tiling.source.BlobInputStream;
 import org.oscim.tiling.source.ITileDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-
 import static org.oscim.tiling.QueryResult.FAILED;
 import static org.oscim.tiling.QueryResult.SUCCESS;
 
@@ -38,20 +42,39 @@ abstract class SQLiteTileDatabase implements ITileDataSource {
 
     private final SQLiteTileSource mSQLiteTileSource;
     private final ITileDecoder mTileDecoder;
+    private final BlobInputStream mBlobInputStream;
+    private SQLiteDatabase mDatabase;
+    // tile coordinates are bound as numbers, query is compiled once and cached by connection
+    private final long[] mTileArgs = new long[3];
+    private final SQLiteDatabase.CursorFactory mTileCursorFactory = new SQLiteDatabase.CursorFactory() {
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+            for (int i = 0; i < mTileArgs.length; i++)
+                query.bindLong(i + 1, mTileArgs[i]);
+            return new SQLiteCursor(masterQuery, editTable, query);
+        }
+    };
 
     SQLiteTileDatabase(SQLiteTileSource tileSource, ITileDecoder tileDecoder) {
         mSQLiteTileSource = tileSource;
         mTileDecoder = tileDecoder;
+        mBlobInputStream = new BlobInputStream();
     }
 
     /**
      * Returns tile query that expects three parameters (in that particular order):
      * x, y, zoom
      *
-     * @param args argument list, for optional modification
-     * @return SQL query in
+     * @return SQL query
      */
-    protected abstract String getTileQuery(String[] args);
+    protected abstract String getTileQuery();
+
+    /**
+     * Converts tile row to the database specific one.
+     */
+    protected int getTileRow(int y, int zoom) {
+        return y;
+    }
 
     @Override
     public void query(MapTile tile, ITileDataSink sink) {
@@ -59,22 +82,43 @@ abstract class SQLiteTileDatabase implements ITileDataSource {
             sink.completed(SUCCESS);
             return;
         }
-        String[] args = {String.valueOf(tile.tileX), String.valueOf(tile.tileY), String.valueOf(tile.zoomLevel)};
+        BitmapTileCache bitmapCache = mSQLiteTileSource.mBitmapCache;
+        if (bitmapCache != null) {
+            Bitmap bitmap = bitmapCache.get(TileKey.getKey(tile.zoomLevel, tile.tileX, tile.tileY));
+            if (bitmap != null) {
+                sink.setTileImage(bitmap);
+                sink.completed(SUCCESS);
+                return;
+            }
+        }
         boolean ok = false;
-        try (Cursor c = mSQLiteTileSource.mDatabase.rawQuery(getTileQuery(args), args)) {
-            if (c.moveToFirst()) {
-                byte[] bytes = c.getBlob(0);
-                ok = mTileDecoder.decode(tile, sink, new ByteArrayInputStream(bytes));
+        try {
+            if (mDatabase == null)
+                mDatabase = mSQLiteTileSource.acquireReader();
+            mTileArgs[0] = tile.tileX;
+            mTileArgs[1] = getTileRow(tile.tileY, tile.zoomLevel);
+            mTileArgs[2] = tile.zoomLevel;
+            byte[] blob = null;
+            try (Cursor cursor = mDatabase.rawQueryWithFactory(mTileCursorFactory, getTileQuery(), null, null)) {
+                if (cursor.moveToFirst())
+                    blob = cursor.getBlob(0);
             }
+            if (blob != null)
+                ok = mTileDecoder.decode(tile, sink, mBlobInputStream.set(blob));
         } catch (Exception e) {
             logger.error(mSQLiteTileSource.getMapInfo().name, e);
         } finally {
+            mBlobInputStream.release();
             sink.completed(ok ? SUCCESS : FAILED);
         }
     }
 
     @Override
     public void dispose() {
+        if (mDatabase != null) {
+            mSQLiteTileSource.releaseReader(mDatabase);
+            mDatabase = null;
+        }
     }
 
     @Override
@@ -17,6 +17,7 @@
 package org.oscim.tiling.source.sqlite;
 
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import org.oscim.backend.CanvasAdapter;
@@ -26,6 +27,7 @@ import org.oscim.core.Tile;
 import org.oscim.layers.tile.bitmap.BitmapTileLayer;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileKey;
 import org.oscim.tiling.TileSource;
 import org.oscim.tiling.source.ITileDecoder;
 import org.oscim.tiling.source.oscimap4.TileDecoder;
@@ -37,16 +39,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 
 public class SQLiteTileSource extends TileSource {
     private static final Logger logger = LoggerFactory.getLogger(SQLiteTileSource.class);
 
     public static final byte[] MAGIC = "SQLite format".getBytes();
 
+    private static final int MAX_READERS = 4;
+
     SQLiteDatabase mDatabase;
     private SQLiteOpenHelper mOpenHelper;
     private Class<? extends SQLiteTileDatabase> mTileDatabase;
     BoundingBox mBoundingBox;
+    BitmapTileCache mBitmapCache;
+    private final ArrayList<SQLiteDatabase> mReaders = new ArrayList<>();
+    private final ArrayDeque<SQLiteDatabase> mIdleReaders = new ArrayDeque<>();
     public int sourceZoomMin = 0;
 
     public SQLiteTileSource() {
@@ -156,9 +165,62 @@ public class SQLiteTileSource extends TileSource {
 
     @Override
     public void close() {
+        if (mBitmapCache != null)
+            mBitmapCache.clear();
+        synchronized (mReaders) {
+            for (SQLiteDatabase reader : mReaders)
+                reader.close();
+            mReaders.clear();
+            mIdleReaders.clear();
+        }
         mDatabase.close();
     }
 
+    /**
+     * Returns database connection for tile loader. Database opened by helper is shared as it
+     * uses write-ahead logging which has its own pool of reader connections. Map files are
+     * opened read-only so each loader gets separate connection to read tiles in parallel,
+     * when pool is exhausted main connection is shared.
+     */
+    SQLiteDatabase acquireReader() {
+        if (mOpenHelper != null)
+            return mDatabase;
+        synchronized (mReaders) {
+            SQLiteDatabase reader = mIdleReaders.pollFirst();
+            if (reader != null)
+                return reader;
+            if (mReaders.size() < MAX_READERS) {
+                try {
+                    reader = SQLiteDatabase.openDatabase(mDatabase.getPath(), null,
+                            SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+                    mReaders.add(reader);
+                    return reader;
+                } catch (SQLiteException e) {
+                    logger.error("Failed to open reader", e);
+                }
+            }
+        }
+        return mDatabase;
+    }
+
+    void releaseReader(SQLiteDatabase reader) {
+        if (reader == mDatabase)
+            return;
+        synchronized (mReaders) {
+            if (mReaders.contains(reader))
+                mIdleReaders.addLast(reader);
+        }
+    }
+
+    /**
+     * Enables cache of decoded bitmap tiles. Should be called before source is attached to map.
+     *
+     * @param size memory budget in bytes
+     */
+    public void setBitmapCacheSize(long size) {
+        mBitmapCache = new BitmapTileCache(size);
+    }
+
     void setMinZoom(int minZoom) {
         sourceZoomMin = minZoom;
         mZoomMin = 0;
@@ -179,6 +241,16 @@ public class SQLiteTileSource extends TileSource {
     private class BitmapTileDecoder implements ITileDecoder {
         @Override
         public boolean decode(Tile tile, ITileDataSink sink, InputStream is) throws IOException {
+            if (mBitmapCache != null) {
+                long key = TileKey.getKey(tile.zoomLevel, tile.tileX, tile.tileY);
+                Bitmap bitmap = mBitmapCache.decode(key, is);
+                if (bitmap == null) {
+                    logger.warn("invalid bitmap {}", tile);
+                    return false;
+                }
+                sink.setTileImage(bitmap);
+                return true;
+            }
 
             Bitmap bitmap = CanvasAdapter.decodeBitmap(is);
             if (!bitmap.isValid()) {
@@ -0,0 +1,210 @@
+package mobi.maptrek.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Track columnar storage and statistics tests.
+ */
+public class TrackTest {
+    private static Track createTrack(int size) {
+        Track track = new Track();
+        for (int i = 0; i < size; i++)
+            track.addPoint(i % 100 != 0, i, -i, i * 0.5f, i * 0.25f, i % 360, i * 0.1f, i * 1000L);
+        return track;
+    }
+
+    private static void assertPoints(Track track, int size) {
+        assertEquals("Wrong track size", size, track.size());
+        assertEquals("Wrong points view size", size, track.points.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals("Wrong latitude at " + i, i, track.getLatitudeE6(i));
+            assertEquals("Wrong longitude at " + i, -i, track.getLongitudeE6(i));
+            assertEquals("Wrong elevation at " + i, i * 0.5f, track.getElevation(i), 0f);
+            assertEquals("Wrong speed at " + i, i * 0.25f, track.getSpeed(i), 0f);
+            assertEquals("Wrong bearing at " + i, i % 360, track.getBearing(i), 0f);
+            assertEquals("Wrong accuracy at " + i, i * 0.1f, track.getAccuracy(i), 0f);
+            assertEquals("Wrong time at " + i, i * 1000L, track.getTime(i));
+            assertEquals("Wrong continuity at " + i, i % 100 != 0, track.isContinuous(i));
+        }
+    }
+
+    @Test
+    public void testChunkBoundaries() throws Exception {
+        assertPoints(createTrack(1023), 1023);
+        assertPoints(createTrack(1024), 1024);
+        assertPoints(createTrack(1025), 1025);
+        assertPoints(createTrack(3000), 3000);
+    }
+
+    @Test
+    public void testPointObjects() throws Exception {
+        Track track = createTrack(1025);
+        Track.TrackPoint point = track.getPoint(1024);
+        assertEquals("Wrong point latitude", 1024, point.latitudeE6);
+        assertEquals("Wrong point longitude", -1024, point.longitudeE6);
+        assertEquals("Wrong point time", 1024000L, point.time);
+        assertTrue("Wrong point continuity", point.continuous);
+        point = track.getLastPoint();
+        assertEquals("Wrong last point", 1024, point.latitudeE6);
+        assertFalse("Wrong point continuity", track.points.get(1000).continuous);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testPointOutOfBounds() throws Exception {
+        createTrack(1024).getPoint(1024);
+    }
+
+    @Test
+    public void testContinuity() throws Exception {
+        Track track = new Track();
+        track.addPoint(false, 0, 0, 0f, 0f, 0f, 0f, 0L);
+        track.addPoint(true, 1, 1, 0f, 0f, 0f, 0f, 1L);
+        track.addPointFast(false, 2, 2, 0f, 0f, 0f, 0f, 2L);
+        track.addPointFast(true, 3, 3, 0f, 0f, 0f, 0f, 3L);
+        assertFalse("First point should start segment", track.isContinuous(0));
+        assertTrue("Second point should be continuous", track.isContinuous(1));
+        assertFalse("Third point should start segment", track.isContinuous(2));
+        assertTrue("Fourth point should be continuous", track.isContinuous(3));
+        track.clear();
+        track.addPoint(true, 0, 0, 0f, 0f, 0f, 0f, 0L);
+        assertTrue("Segment breaks should be cleared", track.isContinuous(0));
+    }
+
+    @Test
+    public void testCopyFrom() throws Exception {
+        Track source = createTrack(1025);
+        source.name = "source";
+        Track track = createTrack(10);
+        track.copyFrom(source);
+        assertEquals("Wrong track name", "source", track.name);
+        assertPoints(track, 1025);
+        // copy should not share storage with source
+        source.addPoint(true, 1, 1, 0f, 0f, 0f, 0f, 0L);
+        track.addPoint(false, 1025, -1025, 512.5f, 256.25f, 305, 102.5f, 1025000L);
+        assertEquals("Copy should not change with source", 1026, track.size());
+        assertEquals("Wrong added latitude", 1025, track.getLatitudeE6(1025));
+    }
+
+    @Test
+    public void testCopyFromEmpty() throws Exception {
+        Track track = createTrack(1025);
+        track.copyFrom(new Track());
+        assertEquals("Track should be empty", 0, track.size());
+        assertNull("Track should have no last point", track.getLastPoint());
+        track.addPoint(true, 1, 2, 3f, 4f, 5f, 6f, 7L);
+        assertEquals("Wrong track size", 1, track.size());
+        assertEquals("Wrong latitude", 1, track.getLatitudeE6(0));
+        assertTrue("Segment breaks should not be copied", track.isContinuous(0));
+        // grow copied empty track past first chunk
+        for (int i = 1; i < 2050; i++)
+            track.addPoint(true, i, i, 0f, 0f, 0f, 0f, i);
+        assertEquals("Wrong track size", 2050, track.size());
+        assertEquals("Wrong latitude", 2049, track.getLatitudeE6(2049));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        Track track = createTrack(2049);
+        track.clear();
+        assertEquals("Track should be empty", 0, track.size());
+        assertEquals("Points view should be empty", 0, track.points.size());
+        assertNull("Track should have no last point", track.getLastPoint());
+        assertPoints(createTrack(0), 0);
+        for (int i = 0; i < 1025; i++)
+            track.addPoint(i % 100 != 0, i, -i, i * 0.5f, i * 0.25f, i % 360, i * 0.1f, i * 1000L);
+        assertPoints(track, 1025);
+    }
+
+    private static void addPoints(Track track, int from, int to, boolean fast) {
+        for (int i = from; i < to; i++) {
+            // zigzag across elevation threshold with pauses and unknown elevations
+            float elevation = i % 7 == 3 ? Float.NaN : (i % 20) * 2f;
+            float speed = i % 10 < 3 ? 0f : 1.5f;
+            if (fast)
+                track.addPointFast(i % 50 != 0, 50000000 + i * 100, 30000000 + i * 50, elevation, speed, 0f, 5f, 1000000L + i * 2000L);
+            else
+                track.addPoint(i % 50 != 0, 50000000 + i * 100, 30000000 + i * 50, elevation, speed, 0f, 5f, 1000000L + i * 2000L);
+        }
+    }
+
+    private static void assertStatistics(Track expected, Track actual) {
+        assertEquals("Wrong distance", expected.getDistance(), actual.getDistance(), 0.01f);
+        assertEquals("Wrong elevation gain", expected.getElevationGain(), actual.getElevationGain(), 0.001f);
+        assertEquals("Wrong elevation loss", expected.getElevationLoss(), actual.getElevationLoss(), 0.001f);
+        assertEquals("Wrong moving time", expected.getMovingTime(), actual.getMovingTime());
+        assertEquals("Wrong bounding box", expected.getBoundingBox().minLatitudeE6, actual.getBoundingBox().minLatitudeE6);
+        assertEquals("Wrong bounding box", expected.getBoundingBox().maxLatitudeE6, actual.getBoundingBox().maxLatitudeE6);
+        assertEquals("Wrong bounding box", expected.getBoundingBox().minLongitudeE6, actual.getBoundingBox().minLongitudeE6);
+        assertEquals("Wrong bounding box", expected.getBoundingBox().maxLongitudeE6, actual.getBoundingBox().maxLongitudeE6);
+    }
+
+    @Test
+    public void testIncrementalStatistics() throws Exception {
+        Track track = new Track();
+        addPoints(track, 0, 2500, false);
+        float distance = track.getDistance();
+        float gain = track.getElevationGain();
+        float loss = track.getElevationLoss();
+        long movingTime = track.getMovingTime();
+        assertTrue("Distance should be accounted", distance > 0f);
+        assertTrue("Elevation gain should be accounted", gain > 0f);
+        assertTrue("Elevation loss should be accounted", loss > 0f);
+        assertTrue("Moving time should be accounted", movingTime > 0L);
+        track.rebuildStatistics();
+        assertEquals("Rebuilt distance differs", distance, track.getDistance(), 0.01f);
+        assertEquals("Rebuilt elevation gain differs", gain, track.getElevationGain(), 0.001f);
+        assertEquals("Rebuilt elevation loss differs", loss, track.getElevationLoss(), 0.001f);
+        assertEquals("Rebuilt moving time differs", movingTime, track.getMovingTime());
+    }
+
+    @Test
+    public void testFastThenIncrementalStatistics() throws Exception {
+        Track expected = new Track();
+        addPoints(expected, 0, 2500, false);
+        Track track = new Track();
+        addPoints(track, 0, 1200, true);
+        addPoints(track, 1200, 2500, false);
+        assertStatistics(expected, track);
+        // statistics are valid after first request and are updated incrementally again
+        addPoints(expected, 2500, 3000, false);
+        addPoints(track, 2500, 3000, false);
+        assertStatistics(expected, track);
+        Track copy = new Track();
+        copy.copyFrom(track);
+        assertStatistics(expected, copy);
+    }
+
+    @Test
+    public void testElevationStatistics() throws Exception {
+        Track track = new Track();
+        // zero is valid elevation, unknown elevation is NaN
+        float[] elevations = {0f, 3f, Float.NaN, 10f, 0f, -2f, -6f, Float.NaN, 0f};
+        for (int i = 0; i < elevations.length; i++)
+            track.addPoint(true, i, i, elevations[i], 0f, 0f, 0f, i * 1000L);
+        assertEquals("Wrong elevation gain", 16f, track.getElevationGain(), 0f);
+        assertEquals("Wrong elevation loss", 16f, track.getElevationLoss(), 0f);
+        track.rebuildStatistics();
+        assertEquals("Wrong rebuilt elevation gain", 16f, track.getElevationGain(), 0f);
+        assertEquals("Wrong rebuilt elevation loss", 16f, track.getElevationLoss(), 0f);
+        track.clear();
+        assertEquals("Elevation gain should be reset", 0f, track.getElevationGain(), 0f);
+        assertEquals("Distance should be reset", 0f, track.getDistance(), 0f);
+    }
+
+    @Test
+    public void testMovingTime() throws Exception {
+        Track track = new Track();
+        track.addPoint(true, 0, 0, Float.NaN, 0f, 0f, 0f, 1000L);
+        track.addPoint(true, 100, 0, Float.NaN, 1f, 0f, 0f, 3000L);
+        track.addPoint(true, 100, 0, Float.NaN, 0.1f, 0f, 0f, 8000L);
+        // breaks between segments are not counted
+        track.addPoint(false, 200, 0, Float.NaN, 1f, 0f, 0f, 20000L);
+        track.addPoint(true, 300, 0, Float.NaN, 1f, 0f, 0f, 21000L);
+        assertEquals("Wrong moving time", 3000L, track.getMovingTime());
+    }
+}
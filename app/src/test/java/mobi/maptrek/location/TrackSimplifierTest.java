@@ -0,0 +1,88 @@
+package mobi.maptrek.location;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Streaming track simplifier tests. Points are identified by their indexes.
+ */
+public class TrackSimplifierTest {
+    private static final double LATITUDE = 55d;
+    private static final double STEP = 0.0001d; // about 11 meters along meridian
+
+    private static List<Integer> simplify(TrackSimplifier<Integer> simplifier, double[][] points) {
+        List<Integer> written = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            Integer point = simplifier.add(i, points[i][0], points[i][1]);
+            if (point != null)
+                written.add(point);
+        }
+        Integer point = simplifier.flush();
+        if (point != null)
+            written.add(point);
+        return written;
+    }
+
+    private static double[][] createLine(int size) {
+        double[][] points = new double[size][];
+        for (int i = 0; i < size; i++)
+            points[i] = new double[]{LATITUDE + i * STEP, 30d};
+        return points;
+    }
+
+    @Test
+    public void testStraightLine() throws Exception {
+        TrackSimplifier<Integer> simplifier = new TrackSimplifier<>(5f, 50);
+        assertEquals("Only track ends should be written", Arrays.asList(0, 19),
+                simplify(simplifier, createLine(20)));
+    }
+
+    @Test
+    public void testCorner() throws Exception {
+        double[][] points = new double[20][];
+        for (int i = 0; i < 10; i++)
+            points[i] = new double[]{LATITUDE + i * STEP, 30d};
+        for (int i = 10; i < 20; i++)
+            points[i] = new double[]{LATITUDE + 9 * STEP, 30d + (i - 9) * STEP * 2};
+        TrackSimplifier<Integer> simplifier = new TrackSimplifier<>(5f, 50);
+        assertEquals("Corner should be written", Arrays.asList(0, 9, 19),
+                simplify(simplifier, points));
+    }
+
+    @Test
+    public void testTolerance() throws Exception {
+        double[][] points = createLine(20);
+        // zigzag of about one meter
+        for (int i = 0; i < points.length; i++)
+            points[i][1] += i % 2 == 0 ? 0.00001d : -0.00001d;
+        assertEquals("Deviations within tolerance should be dropped", Arrays.asList(0, 19),
+                simplify(new TrackSimplifier<Integer>(5f, 50), points));
+        assertEquals("Deviations beyond tolerance should be kept", 20,
+                simplify(new TrackSimplifier<Integer>(0.1f, 50), points).size());
+    }
+
+    @Test
+    public void testWindowSize() throws Exception {
+        TrackSimplifier<Integer> simplifier = new TrackSimplifier<>(5f, 3);
+        assertEquals("Points should not be held back longer than window allows",
+                Arrays.asList(0, 3, 6, 9), simplify(simplifier, createLine(10)));
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        TrackSimplifier<Integer> simplifier = new TrackSimplifier<>(5f, 50);
+        assertNull("Empty simplifier should not return point", simplifier.flush());
+        assertEquals("First point should be written", Integer.valueOf(0), simplifier.add(0, LATITUDE, 30d));
+        assertNull("Flush should not repeat anchor", simplifier.flush());
+        assertEquals("Point after flush should start new segment", Integer.valueOf(1), simplifier.add(1, LATITUDE, 30d));
+        assertNull("Point should be held back", simplifier.add(2, LATITUDE + STEP, 30d));
+        assertEquals("Held back point should be released", Integer.valueOf(2), simplifier.flush());
+        assertNull("Flush should clear window", simplifier.flush());
+    }
+}
@@ -0,0 +1,99 @@
+package mobi.maptrek.maps.maptrek;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.oscim.tiling.TileKey;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Block reading of native tiles from tile archives.
+ */
+public class MapTrekDataSourceTest {
+    private static final int ZOOM = 14;
+    private static final int X = 1000;
+    private static final int Y = 2000;
+
+    private File mRoot;
+    private DecodedTileCache mTileCache;
+    private MapTrekDataSource mDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        mRoot = File.createTempFile("archives", "");
+        assertTrue("Failed to delete temporary file", mRoot.delete());
+        assertTrue("Failed to create temporary directory", mRoot.mkdir());
+        // last tile of the block is absent from map
+        writeArchive(TileArchive.getFile(mRoot, X >> 7, Y >> 7), new long[]{
+                TileKey.getKey(ZOOM, X, Y),
+                TileKey.getKey(ZOOM, X, Y + 1),
+                TileKey.getKey(ZOOM, X + 1, Y)
+        });
+        mTileCache = new DecodedTileCache(1024 * 1024);
+        mDataSource = new MapTrekDataSource(null, mTileCache, new TileArchives(mRoot), null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = mRoot.listFiles();
+        if (files != null)
+            for (File file : files)
+                assertTrue("Failed to delete " + file, file.delete());
+        assertTrue("Failed to delete " + mRoot, mRoot.delete());
+    }
+
+    /**
+     * Writes archive of empty tiles, keys should be sorted.
+     */
+    private static void writeArchive(File file, long[] keys) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x4D544152);
+            out.writeInt(1);
+            out.writeInt(keys.length);
+            int offset = 12 + keys.length * 16;
+            for (long key : keys) {
+                out.writeLong(key);
+                out.writeInt(offset);
+                out.writeInt(0);
+            }
+        }
+    }
+
+    private void assertPresent(int x, int y) {
+        ExtendedMapElement[] elements = mTileCache.get(TileKey.getKey(ZOOM, x, y));
+        assertNotNull("Tile " + x + "/" + y + " should be cached", elements);
+        assertFalse("Tile " + x + "/" + y + " should not be empty", elements == DecodedTileCache.EMPTY_TILE);
+    }
+
+    private void assertEmpty(int x, int y) {
+        ExtendedMapElement[] elements = mTileCache.get(TileKey.getKey(ZOOM, x, y));
+        assertTrue("Tile " + x + "/" + y + " should be cached as empty", elements == DecodedTileCache.EMPTY_TILE);
+    }
+
+    @Test
+    public void testFetchArchiveBlockTwice() throws Exception {
+        ExtendedMapElement[] cached = new ExtendedMapElement[]{new ExtendedMapElement()};
+        mTileCache.put(TileKey.getKey(ZOOM, X + 1, Y), cached);
+
+        mDataSource.fetchTiles(ZOOM, X, Y, X + 1, Y + 1);
+        assertTrue("Cached tile should be kept", mTileCache.get(TileKey.getKey(ZOOM, X + 1, Y)) == cached);
+        assertPresent(X, Y);
+        assertPresent(X, Y + 1);
+        assertEmpty(X + 1, Y + 1);
+
+        mDataSource.fetchTiles(ZOOM, X, Y, X + 1, Y + 1);
+        assertTrue("Cached tile should be kept", mTileCache.get(TileKey.getKey(ZOOM, X + 1, Y)) == cached);
+        assertPresent(X, Y);
+        assertPresent(X, Y + 1);
+        assertEmpty(X + 1, Y + 1);
+    }
+}
@@ -0,0 +1,179 @@
+package mobi.maptrek.maps.online;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.Tile;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mobi.maptrek.util.ProgressListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Online tile cache tests, tiles are fetched from stub provider.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class OnlineTileCacheTest {
+    // two by two tiles at zoom 10 and 11
+    private static final BoundingBox AREA = new BoundingBox(55.7, 37.5, 55.8, 37.7);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubTileCache mCache;
+    private StubTileSource mTileSource;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        mCache = new StubTileCache(context, mFolder.newFolder("cache"));
+        mTileSource = new StubTileSource(context);
+    }
+
+    @Test
+    public void testTileRange() throws Exception {
+        assertEquals("Wrong range", Arrays.toString(new int[]{0, 0, 0, 0}),
+                Arrays.toString(OnlineTileCache.getTileRange(AREA, 0)));
+        assertEquals("Wrong range", Arrays.toString(new int[]{618, 319, 619, 320}),
+                Arrays.toString(OnlineTileCache.getTileRange(AREA, 10)));
+        assertEquals("Wrong range", Arrays.toString(new int[]{2474, 1279, 2476, 1281}),
+                Arrays.toString(OnlineTileCache.getTileRange(AREA, 12)));
+        // range is limited by world bounds
+        BoundingBox world = new BoundingBox(-85.0511287798, -180, 85.0511287798, 180);
+        assertEquals("Wrong world range", Arrays.toString(new int[]{0, 0, 3, 3}),
+                Arrays.toString(OnlineTileCache.getTileRange(world, 2)));
+    }
+
+    @Test
+    public void testSeedProgress() throws Exception {
+        CountingProgressListener listener = new CountingProgressListener();
+        assertEquals("Wrong number of downloaded tiles", 8, mCache.seed(mTileSource, AREA, 10, 11, listener));
+        assertEquals("Wrong total", 8, listener.total);
+        assertEquals("Wrong progress", 8, listener.progress);
+        assertEquals("Wrong number of progress calls", 8, listener.calls);
+        assertTrue("Progress should be finished", listener.finished);
+        assertEquals("Wrong number of fetched tiles", 8, mCache.fetched.size());
+
+        // cached tiles are not fetched again but progress is still reported
+        listener = new CountingProgressListener();
+        assertEquals("Cached tiles should not be downloaded", 0, mCache.seed(mTileSource, AREA, 10, 11, listener));
+        assertEquals("Wrong progress", 8, listener.progress);
+        assertEquals("Wrong number of progress calls", 8, listener.calls);
+        assertEquals("Cached tiles should not be fetched", 8, mCache.fetched.size());
+
+        // failed tiles are reported too
+        mCache.fail = true;
+        listener = new CountingProgressListener();
+        assertEquals("Failed tiles should not be counted", 0, mCache.seed(mTileSource, AREA, 12, 12, listener));
+        assertEquals("Wrong number of progress calls", 9, listener.calls);
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        mCache.seed(mTileSource, AREA, 10, 11, null);
+        File file = new File(mFolder.getRoot(), "export.mbtiles");
+        assertEquals("Wrong number of exported tiles", 4, mCache.export("stub", "Stub", AREA, 10, 10, file));
+
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            try (Cursor c = database.rawQuery("SELECT zoom_level, tile_column, tile_row, tile_data FROM tiles ORDER BY tile_column, tile_row", null)) {
+                assertEquals("Wrong number of tiles", 4, c.getCount());
+                assertTrue("No tiles", c.moveToFirst());
+                assertEquals("Wrong zoom", 10, c.getInt(0));
+                assertEquals("Wrong column", 618, c.getInt(1));
+                assertEquals("Wrong row", 319, c.getInt(2));
+                assertEquals("Wrong data", "stub://10/618/319", new String(c.getBlob(3), "UTF-8"));
+            }
+            assertEquals("Wrong name", "Stub", getMetadata(database, "name"));
+            assertEquals("Wrong format", "png", getMetadata(database, "format"));
+            assertEquals("Wrong min zoom", "10", getMetadata(database, "minzoom"));
+            assertEquals("Wrong max zoom", "10", getMetadata(database, "maxzoom"));
+            assertEquals("Wrong row type", "xyz", getMetadata(database, "tile_row_type"));
+        } finally {
+            database.close();
+        }
+    }
+
+    private static String getMetadata(SQLiteDatabase database, String name) {
+        try (Cursor c = database.rawQuery("SELECT value FROM metadata WHERE name = ?", new String[]{name})) {
+            return c.moveToFirst() ? c.getString(0) : null;
+        }
+    }
+
+    private static class StubTileCache extends OnlineTileCache {
+        final List<String> fetched = new ArrayList<>();
+        boolean fail;
+
+        StubTileCache(Context context, File cacheDir) {
+            super(context, cacheDir, 1024 * 1024);
+        }
+
+        @Override
+        byte[] fetch(String url) {
+            if (fail)
+                return null;
+            fetched.add(url);
+            return url.getBytes();
+        }
+    }
+
+    private static class StubTileSource extends OnlineTileSource {
+        StubTileSource(Context context) {
+            super(OnlineTileSource.builder(context).name("Stub").code("stub").uri("content://stub"));
+        }
+
+        @Override
+        public OpenResult open() {
+            return OpenResult.SUCCESS;
+        }
+
+        @Override
+        public String getTileUrl(Tile tile) {
+            return "stub://" + tile.zoomLevel + "/" + tile.tileX + "/" + tile.tileY;
+        }
+    }
+
+    private static class CountingProgressListener implements ProgressListener {
+        int total;
+        int progress;
+        int calls;
+        boolean finished;
+
+        @Override
+        public void onProgressStarted(int length) {
+            total = length;
+        }
+
+        @Override
+        public void onProgressChanged(int progress) {
+            this.progress = progress;
+            calls++;
+        }
+
+        @Override
+        public void onProgressFinished() {
+            finished = true;
+        }
+
+        @Override
+        public void onProgressAnnotated(String annotation) {
+        }
+    }
+}